@@ -0,0 +1,151 @@
+package org.cyclopsgroup.gitcon;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Delivers {@link ChangeEvent}s to listeners watching files or directories, which is the common
+ * part of {@link ResourceRepository#watch(String, ChangeListener)} implementations. Listeners are
+ * called from one thread of dispatcher after a coalescing delay, and events published for a
+ * listener within the delay are merged into one.
+ */
+public class ChangeDispatcher implements Closeable {
+  private class Watch implements Closeable {
+    private final ChangeListener listener;
+    private final String pathOrPrefix;
+    private ChangeEvent pendingEvent;
+
+    private Watch(String pathOrPrefix, ChangeListener listener) {
+      this.pathOrPrefix = pathOrPrefix;
+      this.listener = listener;
+    }
+
+    @Override
+    public void close() {
+      watches.remove(this);
+    }
+
+    private void deliver() {
+      ChangeEvent event;
+      synchronized (ChangeDispatcher.this) {
+        event = pendingEvent;
+        pendingEvent = null;
+      }
+      if (event == null || !watches.contains(this)) {
+        return;
+      }
+      try {
+        listener.onChange(event);
+      } catch (RuntimeException e) {
+        LOG.error("Listener of " + pathOrPrefix + " failed to handle " + event, e);
+      }
+    }
+  }
+
+  private static final long DEFAULT_COALESCING_MILLIS = 500;
+
+  private static final Log LOG = LogFactory.getLog(ChangeDispatcher.class);
+
+  private boolean closed;
+
+  private volatile long coalescingMillis = DEFAULT_COALESCING_MILLIS;
+
+  private ScheduledExecutorService executor;
+
+  private final String name;
+
+  private final List<Watch> watches = new CopyOnWriteArrayList<>();
+
+  /** @param name Name of dispatcher, which shows up in the name of its thread */
+  public ChangeDispatcher(String name) {
+    this.name = name;
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    watches.clear();
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  private synchronized ScheduledExecutorService getExecutor() {
+    if (executor == null) {
+      executor =
+          Executors.newSingleThreadScheduledExecutor(
+              runnable -> {
+                Thread thread = new Thread(runnable, "gitcon-changes-" + name);
+                thread.setDaemon(true);
+                return thread;
+              });
+    }
+    return executor;
+  }
+
+  /** @return Paths or prefixes that are watched, which is empty if there is no listener */
+  public List<String> getWatchedPaths() {
+    List<String> paths = new ArrayList<>();
+    for (Watch watch : watches) {
+      paths.add(watch.pathOrPrefix);
+    }
+    return paths;
+  }
+
+  /**
+   * Deliver changes to listeners of affected files. Call returns without waiting for listeners.
+   *
+   * @param event Changes of files
+   */
+  public void publish(ChangeEvent event) {
+    for (Watch watch : watches) {
+      ChangeEvent filtered = event.filter(watch.pathOrPrefix);
+      if (filtered.isEmpty()) {
+        continue;
+      }
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        if (watch.pendingEvent != null) {
+          watch.pendingEvent = watch.pendingEvent.merge(filtered);
+          continue;
+        }
+        watch.pendingEvent = filtered;
+        getExecutor().schedule(watch::deliver, coalescingMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  /**
+   * The default coalescing delay is {@value #DEFAULT_COALESCING_MILLIS} milliseconds.
+   *
+   * @param coalescingMillis Delay between the first change and the call of listener
+   */
+  public void setCoalescingMillis(long coalescingMillis) {
+    Validate.isTrue(coalescingMillis >= 0, "Invalid coalescing delay " + coalescingMillis);
+    this.coalescingMillis = coalescingMillis;
+  }
+
+  /**
+   * @param pathOrPrefix Path of file or directory, or empty for everything
+   * @param listener Listener of changes
+   * @return Handle that removes listener when it's closed
+   */
+  public Closeable watch(String pathOrPrefix, ChangeListener listener) {
+    Validate.notNull(listener, "Listener can't be NULL.");
+    Watch watch =
+        new Watch(StringUtils.removeStart(StringUtils.trimToEmpty(pathOrPrefix), "/"), listener);
+    watches.add(watch);
+    return watch;
+  }
+}
@@ -0,0 +1,168 @@
+package org.cyclopsgroup.gitcon;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Files changed by one update of repository, with paths relative to the root of repository. A path
+ * that is renamed shows up as deleted under its old path and added under its new path. A directory
+ * may show up under its own path when the repository only knows that something in it changed.
+ */
+public final class ChangeEvent {
+  private static boolean matches(String path, String pathOrPrefix) {
+    if (pathOrPrefix.isEmpty()) {
+      return true;
+    }
+    String directory = StringUtils.removeEnd(pathOrPrefix, "/");
+    return path.equals(directory) || path.startsWith(directory + "/");
+  }
+
+  private static Set<String> select(Set<String> paths, String pathOrPrefix) {
+    Set<String> selected = new TreeSet<>();
+    for (String path : paths) {
+      if (matches(path, pathOrPrefix)) {
+        selected.add(path);
+      }
+    }
+    return selected;
+  }
+
+  private static Set<String> toSortedSet(Collection<String> paths) {
+    return Collections.unmodifiableSortedSet(new TreeSet<>(paths));
+  }
+
+  private final Set<String> addedPaths;
+
+  private final Set<String> deletedPaths;
+
+  private final Set<String> modifiedPaths;
+
+  private final String newRevision;
+
+  private final String oldRevision;
+
+  /**
+   * @param oldRevision Revision before update, such as commit ID, or NULL if there was none
+   * @param newRevision Revision after update
+   * @param addedPaths Paths of added files
+   * @param modifiedPaths Paths of modified files
+   * @param deletedPaths Paths of deleted files
+   */
+  public ChangeEvent(
+      String oldRevision,
+      String newRevision,
+      Collection<String> addedPaths,
+      Collection<String> modifiedPaths,
+      Collection<String> deletedPaths) {
+    this.oldRevision = oldRevision;
+    this.newRevision = newRevision;
+    this.addedPaths = toSortedSet(addedPaths);
+    this.modifiedPaths = toSortedSet(modifiedPaths);
+    this.deletedPaths = toSortedSet(deletedPaths);
+  }
+
+  /**
+   * @param pathOrPrefix Path of file, or path of directory with or without trailing slash, or
+   *     empty for the whole repository
+   * @return True if the file, or any file under the directory, is changed
+   */
+  public boolean affects(String pathOrPrefix) {
+    for (String path : getChangedPaths()) {
+      if (matches(path, pathOrPrefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param pathOrPrefix Path of file, or path of directory with or without trailing slash, or
+   *     empty for the whole repository
+   * @return Event of the same revisions that only has changes of given file or directory
+   */
+  public ChangeEvent filter(String pathOrPrefix) {
+    return new ChangeEvent(
+        oldRevision,
+        newRevision,
+        select(addedPaths, pathOrPrefix),
+        select(modifiedPaths, pathOrPrefix),
+        select(deletedPaths, pathOrPrefix));
+  }
+
+  public Set<String> getAddedPaths() {
+    return addedPaths;
+  }
+
+  /** @return Sorted paths that are added, modified or deleted */
+  public SortedSet<String> getChangedPaths() {
+    SortedSet<String> paths = new TreeSet<>(addedPaths);
+    paths.addAll(modifiedPaths);
+    paths.addAll(deletedPaths);
+    return paths;
+  }
+
+  public Set<String> getDeletedPaths() {
+    return deletedPaths;
+  }
+
+  public Set<String> getModifiedPaths() {
+    return modifiedPaths;
+  }
+
+  public String getNewRevision() {
+    return newRevision;
+  }
+
+  public String getOldRevision() {
+    return oldRevision;
+  }
+
+  /**
+   * Combine this event with the event that follows it into one event from the old revision of this
+   * event to the new revision of the next one. For example a file that is added and then deleted
+   * ends up unchanged.
+   *
+   * @param next Event that happens after this one
+   * @return Combined event
+   */
+  public ChangeEvent merge(ChangeEvent next) {
+    Set<String> added = new TreeSet<>(addedPaths);
+    Set<String> modified = new TreeSet<>(modifiedPaths);
+    Set<String> deleted = new TreeSet<>(deletedPaths);
+    for (String path : next.addedPaths) {
+      if (deleted.remove(path)) {
+        modified.add(path);
+      } else {
+        added.add(path);
+      }
+    }
+    for (String path : next.modifiedPaths) {
+      if (!added.contains(path)) {
+        modified.add(path);
+      }
+    }
+    for (String path : next.deletedPaths) {
+      if (!added.remove(path)) {
+        modified.remove(path);
+        deleted.add(path);
+      }
+    }
+    return new ChangeEvent(oldRevision, next.newRevision, added, modified, deleted);
+  }
+
+  /** @return True if no file is changed */
+  public boolean isEmpty() {
+    return addedPaths.isEmpty() && modifiedPaths.isEmpty() && deletedPaths.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s..%s added=%s modified=%s deleted=%s",
+        oldRevision, newRevision, addedPaths, modifiedPaths, deletedPaths);
+  }
+}
@@ -0,0 +1,11 @@
+package org.cyclopsgroup.gitcon;
+
+/** Listener of files changed by updates of repository */
+public interface ChangeListener {
+  /**
+   * Called after files are changed and the change is visible to readers of repository
+   *
+   * @param event Files changed by update
+   */
+  void onChange(ChangeEvent event);
+}
@@ -0,0 +1,228 @@
+package org.cyclopsgroup.gitcon;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.Validate;
+
+/**
+ * A repository that wraps another repository so that concurrent reads of the same resource share
+ * one read of the underlying repository. The first reader loads the content and every reader that
+ * arrives while the load is in flight gets the same content. Once the load completes, the next read
+ * goes to the underlying repository again, so readers never see content older than what was
+ * current when they started waiting.
+ *
+ * <p>Content of a resource is held in memory while it's handed out to waiting readers, which is
+ * intended for configuration files rather than large blobs.
+ */
+public class CoalescingResourceRepository implements Closeable, ResourceRepository {
+  private class CoalescedResource extends Resource {
+    private final Resource delegate;
+
+    private CoalescedResource(Resource delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof CoalescedResource
+          && ((CoalescedResource) o).getRepository() == getRepository()
+          && ((CoalescedResource) o).delegate.equals(delegate);
+    }
+
+    private CoalescingResourceRepository getRepository() {
+      return CoalescingResourceRepository.this;
+    }
+
+    @Override
+    public ResourceMetadata getMetadata() throws IOException {
+      return delegate.getMetadata();
+    }
+
+    @Override
+    public String getVersion() throws IOException {
+      return delegate.getVersion();
+    }
+
+    @Override
+    public int hashCode() {
+      return delegate.hashCode();
+    }
+
+    @Override
+    public void read(CheckedStreamConsumer consumer) throws IOException {
+      CompletableFuture<byte[]> load = new CompletableFuture<>();
+      CompletableFuture<byte[]> existing = inflightLoads.putIfAbsent(delegate, load);
+      if (existing != null) {
+        coalescedReads.incrementAndGet();
+        consumer.consume(new ByteArrayInputStream(await(existing)));
+        return;
+      }
+
+      byte[] content;
+      try {
+        content = loadContent(delegate);
+        load.complete(content);
+      } catch (IOException | RuntimeException e) {
+        load.completeExceptionally(e);
+        throw e;
+      } finally {
+        inflightLoads.remove(delegate, load);
+      }
+      consumer.consume(new ByteArrayInputStream(content));
+    }
+
+    @Override
+    protected void readAll(List<Resource> resources, BatchStreamConsumer consumer)
+        throws IOException {
+      Map<CoalescedResource, CompletableFuture<byte[]>> loads = new LinkedHashMap<>();
+      for (Resource resource : resources) {
+        if (!(resource instanceof CoalescedResource)
+            || ((CoalescedResource) resource).getRepository() != getRepository()) {
+          super.readAll(resources, consumer);
+          return;
+        }
+        loads.put((CoalescedResource) resource, null);
+      }
+
+      // Join loads that are in flight, and load the rest with one readAll call of delegate
+      Map<Resource, CompletableFuture<byte[]>> ownLoads = new LinkedHashMap<>();
+      for (Map.Entry<CoalescedResource, CompletableFuture<byte[]>> entry : loads.entrySet()) {
+        Resource resource = entry.getKey().delegate;
+        CompletableFuture<byte[]> load = new CompletableFuture<>();
+        CompletableFuture<byte[]> existing = inflightLoads.putIfAbsent(resource, load);
+        if (existing == null) {
+          ownLoads.put(resource, load);
+          entry.setValue(load);
+        } else {
+          coalescedReads.incrementAndGet();
+          entry.setValue(existing);
+        }
+      }
+      if (!ownLoads.isEmpty()) {
+        try {
+          delegate.readAll(
+              new ArrayList<>(ownLoads.keySet()),
+              (resource, in) -> ownLoads.get(resource).complete(IOUtils.toByteArray(in)));
+          for (Map.Entry<Resource, CompletableFuture<byte[]>> entry : ownLoads.entrySet()) {
+            entry.getValue().completeExceptionally(
+                new IOException("Resource " + entry.getKey() + " is not read."));
+          }
+        } catch (IOException | RuntimeException e) {
+          for (CompletableFuture<byte[]> load : ownLoads.values()) {
+            load.completeExceptionally(e);
+          }
+          throw e;
+        } finally {
+          for (Map.Entry<Resource, CompletableFuture<byte[]>> entry : ownLoads.entrySet()) {
+            inflightLoads.remove(entry.getKey(), entry.getValue());
+          }
+        }
+      }
+
+      for (Resource resource : resources) {
+        consumer.consume(resource, new ByteArrayInputStream(await(loads.get(resource))));
+      }
+    }
+
+    /** Large files are read from delegate directly rather than held in memory for waiters */
+    @Override
+    public ByteBuffer readAsByteBuffer() throws IOException {
+      return delegate.readAsByteBuffer();
+    }
+
+    @Override
+    public Resource reference(String relativePath) {
+      return new CoalescedResource(delegate.reference(relativePath));
+    }
+
+    @Override
+    public long size() throws IOException {
+      return delegate.size();
+    }
+
+    @Override
+    public String toString() {
+      return delegate.toString();
+    }
+  }
+
+  private final AtomicLong coalescedReads = new AtomicLong();
+  private final ResourceRepository delegate;
+  private final ConcurrentMap<Resource, CompletableFuture<byte[]>> inflightLoads =
+      new ConcurrentHashMap<>();
+
+  /**
+   * @param delegate The underlying repository. Its resources must implement equals and hashCode so
+   *     that two resources of the same file are equal.
+   */
+  public CoalescingResourceRepository(ResourceRepository delegate) {
+    Validate.notNull(delegate, "Delegate repository can't be NULL.");
+    this.delegate = delegate;
+  }
+
+  private static byte[] await(CompletableFuture<byte[]> load) throws IOException {
+    try {
+      return load.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for resource to load.");
+    } catch (ExecutionException e) {
+      // The exception of loading thread is wrapped so that stack of waiting thread is kept
+      Throwable cause = e.getCause();
+      if (cause instanceof FileNotFoundException) {
+        FileNotFoundException notFound = new FileNotFoundException(cause.getMessage());
+        notFound.initCause(cause);
+        throw notFound;
+      }
+      if (cause instanceof IOException) {
+        throw new IOException(cause.getMessage(), cause);
+      }
+      if (cause instanceof RuntimeException) {
+        throw new IllegalStateException(cause.getMessage(), cause);
+      }
+      throw new IOException("Loading resource failed.", cause);
+    }
+  }
+
+  private static byte[] loadContent(Resource resource) throws IOException {
+    byte[][] content = new byte[1][];
+    resource.read(in -> content[0] = IOUtils.toByteArray(in));
+    return content[0];
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (delegate instanceof Closeable) {
+      ((Closeable) delegate).close();
+    }
+  }
+
+  /** @return Number of reads that have been served by a load started by another reader */
+  public long getCoalescedReadCount() {
+    return coalescedReads.get();
+  }
+
+  @Override
+  public Resource getResource(String filePath) {
+    return new CoalescedResource(delegate.getResource(filePath));
+  }
+
+  @Override
+  public Closeable watch(String pathOrPrefix, ChangeListener listener) throws IOException {
+    return delegate.watch(pathOrPrefix, listener);
+  }
+}
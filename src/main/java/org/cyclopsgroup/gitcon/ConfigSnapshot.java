@@ -0,0 +1,274 @@
+package org.cyclopsgroup.gitcon;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import org.apache.commons.lang.BooleanUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+
+/**
+ * Immutable view of properties at one point of time. Unlike {@link Properties}, reading it doesn't
+ * lock, and values are parsed as numbers, booleans, durations and lists once when the snapshot is
+ * created, so that typed reads neither parse nor allocate.
+ *
+ * <p>A typed read of a value that can't be parsed as the type fails with {@link
+ * IllegalArgumentException}. Durations are either a number followed by unit {@literal ms},
+ * {@literal s}, {@literal m}, {@literal h} or {@literal d}, a plain number of milliseconds, or
+ * ISO-8601 such as {@literal PT30S}. Lists are comma separated, with elements trimmed and empty
+ * ones dropped.
+ *
+ * @see LiveConfigSnapshot
+ */
+public final class ConfigSnapshot {
+  /** A value and its parsed forms */
+  private static final class Value {
+    private final Boolean booleanValue;
+    private final Duration duration;
+    private final List<String> list;
+    private final boolean numeric;
+    private final long number;
+    private final String string;
+
+    private Value(String string) {
+      this.string = string;
+      String trimmed = string.trim();
+      Long parsed = parseLong(trimmed);
+      this.numeric = parsed != null;
+      this.number = numeric ? parsed : 0;
+      this.booleanValue = BooleanUtils.toBooleanObject(trimmed);
+      this.duration = parseDuration(trimmed, parsed);
+      this.list = parseList(trimmed);
+    }
+  }
+
+  private static final Map<String, ChronoUnit> DURATION_UNITS = new HashMap<>();
+
+  static {
+    DURATION_UNITS.put("ms", ChronoUnit.MILLIS);
+    DURATION_UNITS.put("s", ChronoUnit.SECONDS);
+    DURATION_UNITS.put("m", ChronoUnit.MINUTES);
+    DURATION_UNITS.put("h", ChronoUnit.HOURS);
+    DURATION_UNITS.put("d", ChronoUnit.DAYS);
+  }
+
+  private static final ConfigSnapshot EMPTY = new ConfigSnapshot(new Properties());
+
+  /** @return A snapshot without any value */
+  public static ConfigSnapshot empty() {
+    return EMPTY;
+  }
+
+  /**
+   * @param resource Resource to read as properties merged with files it includes
+   * @return Snapshot of the properties
+   * @throws IOException If resource can't be read
+   */
+  public static ConfigSnapshot load(Resource resource) throws IOException {
+    return new ConfigSnapshot(resource.readAsProperties());
+  }
+
+  /**
+   * @param properties Properties to copy, including their defaults
+   * @return Snapshot of the properties
+   */
+  public static ConfigSnapshot of(Properties properties) {
+    Validate.notNull(properties, "Properties can't be NULL.");
+    return new ConfigSnapshot(properties);
+  }
+
+  private static Duration parseDuration(String value, Long millis) {
+    if (millis != null) {
+      return Duration.ofMillis(millis);
+    }
+    if (StringUtils.startsWithIgnoreCase(value, "P")) {
+      try {
+        return Duration.parse(value);
+      } catch (DateTimeParseException e) {
+        return null;
+      }
+    }
+    int unitStart = value.length();
+    while (unitStart > 0 && Character.isLetter(value.charAt(unitStart - 1))) {
+      unitStart--;
+    }
+    ChronoUnit unit = DURATION_UNITS.get(value.substring(unitStart).toLowerCase());
+    Long amount = parseLong(value.substring(0, unitStart).trim());
+    if (unit == null || amount == null) {
+      return null;
+    }
+    try {
+      // Exact for any amount Duration can hold, instead of saturating as TimeUnit does
+      return Duration.of(amount, unit);
+    } catch (ArithmeticException e) {
+      return null;
+    }
+  }
+
+  private static List<String> parseList(String value) {
+    List<String> list = new ArrayList<>();
+    for (String element : StringUtils.split(value, ',')) {
+      if (StringUtils.isNotBlank(element)) {
+        list.add(element.trim());
+      }
+    }
+    return Collections.unmodifiableList(list);
+  }
+
+  private static Long parseLong(String value) {
+    if (value.isEmpty() || value.length() > 20) {
+      return null;
+    }
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private final Map<String, Value> values;
+
+  private ConfigSnapshot(Properties properties) {
+    Map<String, Value> map = new HashMap<>();
+    for (String name : properties.stringPropertyNames()) {
+      map.put(name, new Value(properties.getProperty(name)));
+    }
+    this.values = Collections.unmodifiableMap(map);
+  }
+
+  /**
+   * @param name Name of property
+   * @return True if property is defined
+   */
+  public boolean contains(String name) {
+    return values.containsKey(name);
+  }
+
+  /**
+   * @param name Name of property
+   * @param defaultValue Value to return if property is not defined
+   * @return Property as boolean, which is one of true, false, yes, no, on or off
+   */
+  public boolean getBoolean(String name, boolean defaultValue) {
+    Value value = values.get(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    if (value.booleanValue == null) {
+      throw invalid(name, value, "boolean");
+    }
+    return value.booleanValue;
+  }
+
+  /**
+   * @param name Name of property
+   * @param defaultValue Value to return if property is not defined
+   * @return Property as duration
+   */
+  public Duration getDuration(String name, Duration defaultValue) {
+    Value value = values.get(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    if (value.duration == null) {
+      throw invalid(name, value, "duration");
+    }
+    return value.duration;
+  }
+
+  /**
+   * @param name Name of property
+   * @param defaultValue Value to return if property is not defined
+   * @return Property as integer
+   */
+  public int getInt(String name, int defaultValue) {
+    Value value = values.get(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    if (!value.numeric || value.number != (int) value.number) {
+      throw invalid(name, value, "integer");
+    }
+    return (int) value.number;
+  }
+
+  /**
+   * @param name Name of property
+   * @return Property as unmodifiable list, which is empty if property is not defined
+   */
+  public List<String> getList(String name) {
+    Value value = values.get(name);
+    return value == null ? Collections.emptyList() : value.list;
+  }
+
+  /**
+   * @param name Name of property
+   * @param defaultValue Value to return if property is not defined
+   * @return Property as long integer
+   */
+  public long getLong(String name, long defaultValue) {
+    Value value = values.get(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    if (!value.numeric) {
+      throw invalid(name, value, "long integer");
+    }
+    return value.number;
+  }
+
+  /** @return Unmodifiable set of names of all properties */
+  public Set<String> getNames() {
+    return values.keySet();
+  }
+
+  /**
+   * @param name Name of property
+   * @return Property as string, or NULL if it's not defined
+   */
+  public String getString(String name) {
+    return getString(name, null);
+  }
+
+  /**
+   * @param name Name of property
+   * @param defaultValue Value to return if property is not defined
+   * @return Property as string
+   */
+  public String getString(String name, String defaultValue) {
+    Value value = values.get(name);
+    return value == null ? defaultValue : value.string;
+  }
+
+  private IllegalArgumentException invalid(String name, Value value, String type) {
+    return new IllegalArgumentException(
+        "Property " + name + "=" + value.string + " is not a valid " + type + ".");
+  }
+
+  /** @return Number of properties */
+  public int size() {
+    return values.size();
+  }
+
+  /** @return A new properties object with all values, which caller is free to modify */
+  public Properties toProperties() {
+    Properties properties = new Properties();
+    for (Map.Entry<String, Value> entry : values.entrySet()) {
+      properties.setProperty(entry.getKey(), entry.getValue().string);
+    }
+    return properties;
+  }
+
+  @Override
+  public String toString() {
+    return "ConfigSnapshot" + getNames();
+  }
+}
@@ -1,12 +1,30 @@
 package org.cyclopsgroup.gitcon;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileFilter;
 import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang.SystemUtils;
 import org.apache.commons.lang.Validate;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -16,31 +34,261 @@ import org.apache.commons.logging.LogFactory;
  * by adding a recurring task that sync local files with remote {@link FileSystemSource} once a
  * while. It makes sure that when files in remote source are changed, the local copy gets the change
  * eventually.
+ *
+ * <p>Resources are read from snapshots rather than the directory source writes into. Every time
+ * source brings in changes, a new snapshot directory is published with one reference swap. Only the
+ * changed files are copied into it, and the rest are hard links to the files of the previous
+ * snapshot, so an update costs a walk of directory entries rather than a copy of the repository.
+ * Files of a snapshot are never written after it's published. A resource and the resources it
+ * references are all read from the snapshot that was current when the resource was obtained, so a
+ * group of files is always read consistently. A snapshot directory is deleted once no resource of
+ * it is reachable anymore, which is checked after updates and when resources are obtained.
+ *
+ * <p>Checks adapt to how often source changes. The interval starts from {@link
+ * #getUpdateIntervalSeconds()}, doubles every time a check finds no change until it reaches {@link
+ * #getMaxUpdateIntervalSeconds()}, and goes back to the start once a change is seen. Failed checks
+ * back off the same way, and after {@value #CIRCUIT_OPEN_FAILURES} failures in a row the circuit
+ * opens, in which case source is only probed at the longest interval until a check succeeds.
+ * {@link #requestUpdate()} always checks immediately regardless of the interval.
+ *
+ * <p>Each update that changes files is published to {@link ChangeListener}s after its snapshot
+ * becomes current, so that listeners can reload only the affected resources. Watchers added with
+ * {@link #watch(String, ChangeListener)} get the same events asynchronously and coalesced.
+ *
+ * <p>Updates run in an {@link UpdateScheduler}. By default each repository has its own scheduler,
+ * and applications with many repositories can share one with {@link
+ * #setUpdateScheduler(UpdateScheduler)}.
  */
 public class DynamicLocalResourceRepository extends StaticLocalResourceRepository {
+  /** Copy of files of source at one point of time */
+  private static class Snapshot {
+    private final File directory;
+
+    private Snapshot(File directory) {
+      this.directory = directory;
+    }
+  }
+
+  /** Reference that is enqueued after a snapshot becomes unreachable */
+  private static class SnapshotReference extends PhantomReference<Snapshot> {
+    private final File directory;
+
+    private SnapshotReference(Snapshot snapshot, ReferenceQueue<Snapshot> queue) {
+      super(snapshot, queue);
+      this.directory = snapshot.directory;
+    }
+  }
+
+  /**
+   * Resource that keeps its snapshot reachable, including during every call that touches its file,
+   * since the delegate alone doesn't stop the snapshot directory from being deleted
+   */
+  private static class SnapshotResource extends Resource {
+    /** Stand-in of Reference.reachabilityFence() of Java 9, a lock that JIT can't remove */
+    private static void reachabilityFence(Object o) {
+      synchronized (o) {
+        // Taking the lock is what keeps the object reachable up to here
+      }
+    }
+
+    private final Resource delegate;
+    private final Snapshot snapshot;
+
+    private SnapshotResource(Snapshot snapshot, Resource delegate) {
+      this.snapshot = snapshot;
+      this.delegate = delegate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof SnapshotResource && ((SnapshotResource) o).delegate.equals(delegate);
+    }
+
+    @Override
+    public ResourceMetadata getMetadata() throws IOException {
+      try {
+        return delegate.getMetadata();
+      } finally {
+        reachabilityFence(snapshot);
+      }
+    }
+
+    @Override
+    public String getVersion() throws IOException {
+      try {
+        return delegate.getVersion();
+      } finally {
+        reachabilityFence(snapshot);
+      }
+    }
+
+    @Override
+    public int hashCode() {
+      return delegate.hashCode();
+    }
+
+    @Override
+    public void read(CheckedStreamConsumer consumer) throws IOException {
+      try {
+        delegate.read(consumer);
+      } finally {
+        reachabilityFence(snapshot);
+      }
+    }
+
+    @Override
+    public ByteBuffer readAsByteBuffer() throws IOException {
+      try {
+        return delegate.readAsByteBuffer();
+      } finally {
+        reachabilityFence(snapshot);
+      }
+    }
+
+    @Override
+    public Resource reference(String relativePath) {
+      return new SnapshotResource(snapshot, delegate.reference(relativePath));
+    }
+
+    @Override
+    public long size() throws IOException {
+      try {
+        return delegate.size();
+      } finally {
+        reachabilityFence(snapshot);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return delegate.toString();
+    }
+  }
+
+  private static final int CIRCUIT_OPEN_FAILURES = 5;
+
+  private static final double DEFAULT_JITTER_RATIO = 0.25;
+
+  private static final int DEFAULT_MAX_UPDATE_INTERVAL_SECONDS = 3600;
+
   private static final int DEFAULT_UPDATE_INTERVAL_SECONDS = 300;
 
   private static final Log LOG = LogFactory.getLog(DynamicLocalResourceRepository.class);
 
+  /**
+   * Link files of the previous snapshot that are not changed into a new snapshot directory
+   *
+   * @return False if file system doesn't support hard links, in which case nothing is linked
+   */
+  private static boolean linkUnchangedFiles(
+      Path from, Path to, Set<String> changedPaths, Set<String> copiedDirectories)
+      throws IOException {
+    List<Path> files = new ArrayList<>();
+    Files.walkFileTree(
+        from,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            return copiedDirectories.contains(toRelativePath(from, dir))
+                ? FileVisitResult.SKIP_SUBTREE
+                : FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (!changedPaths.contains(toRelativePath(from, file))) {
+              files.add(file);
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    for (Path file : files) {
+      Path link = to.resolve(from.relativize(file));
+      Files.createDirectories(link.getParent());
+      try {
+        Files.createLink(link, file);
+      } catch (UnsupportedOperationException | FileSystemException e) {
+        LOG.warn("Can't create hard link " + link + ", snapshot is copied instead: " + e);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String toRelativePath(Path root, Path path) {
+    return FilenameUtils.separatorsToUnix(root.relativize(path).toString());
+  }
+
+  private final ChangeDispatcher changeDispatcher =
+      new ChangeDispatcher(getWorkingDirectory().getName());
+
+  private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
   private volatile boolean closing = false;
 
+  private int consecutiveFailures;
+
+  private int currentIntervalSeconds = DEFAULT_UPDATE_INTERVAL_SECONDS;
+
+  private volatile Snapshot currentSnapshot;
+
+  private double jitterRatio = DEFAULT_JITTER_RATIO;
+
   private final Random random = new Random();
 
-  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private volatile int maxUpdateIntervalSeconds = DEFAULT_MAX_UPDATE_INTERVAL_SECONDS;
+
+  private final ReferenceQueue<Snapshot> reclaimableSnapshots = new ReferenceQueue<>();
+
+  private UpdateScheduler.Registration registration;
+
+  private UpdateScheduler scheduler;
+
+  private boolean schedulerOwned;
+
+  private final Set<SnapshotReference> snapshotReferences = ConcurrentHashMap.newKeySet();
+
+  private long snapshotSequence;
 
   private volatile int updateIntervalSeconds = DEFAULT_UPDATE_INTERVAL_SECONDS;
 
+  private final Object updateLock = new Object();
+
+  private boolean updateRequested;
+
+  private boolean updateRunning;
+
   private final Runnable updateTask =
       new Runnable() {
         @Override
         public void run() {
+          synchronized (updateLock) {
+            updateRunning = true;
+            updateRequested = false;
+          }
+          boolean changed = false;
+          boolean failed = false;
           try {
-            getSource().updateWorkingDirectory(getWorkingDirectory());
+            ChangeEvent event = getSource().updateWorkingDirectory(getWorkingDirectory());
+            changed = event != null;
+            if (changed) {
+              LOG.info("Update operation brought in changes from source.");
+              publishSnapshot(event);
+              fireChangeEvent(event);
+            } else {
+              LOG.debug("Update operation found no change in source.");
+            }
           } catch (Throwable e) {
+            failed = true;
             LOG.error("Update operation failed: " + e.getMessage(), e);
           } finally {
-            if (!closing) {
-              scheduleNextCheck();
+            reclaimSnapshots();
+            synchronized (updateLock) {
+              updateRunning = false;
+              adaptInterval(changed, failed);
+              if (!closing) {
+                scheduleNextCheck();
+              }
             }
           }
         }
@@ -54,19 +302,122 @@ public class DynamicLocalResourceRepository extends StaticLocalResourceRepositor
     super(source);
   }
 
+  /**
+   * Add a listener that is called from update thread after each update that changes files
+   *
+   * @param listener Listener to add
+   */
+  public void addChangeListener(ChangeListener listener) {
+    Validate.notNull(listener, "Listener can't be NULL.");
+    changeListeners.add(listener);
+  }
+
+  /**
+   * Adjust interval to the next check after an update
+   *
+   * @param changed True if update brought in changes
+   * @param failed True if update failed
+   */
+  void adaptInterval(boolean changed, boolean failed) {
+    synchronized (updateLock) {
+      int minInterval = updateIntervalSeconds;
+      int maxInterval = Math.max(minInterval, maxUpdateIntervalSeconds);
+      if (failed) {
+        consecutiveFailures++;
+        if (consecutiveFailures == CIRCUIT_OPEN_FAILURES) {
+          LOG.warn(
+              "Circuit is open after "
+                  + consecutiveFailures
+                  + " failed updates, source is checked every "
+                  + maxInterval
+                  + " seconds until it recovers.");
+        }
+        currentIntervalSeconds =
+            consecutiveFailures >= CIRCUIT_OPEN_FAILURES
+                ? maxInterval
+                : (int) Math.min(maxInterval, (long) minInterval << consecutiveFailures);
+        return;
+      }
+      if (consecutiveFailures >= CIRCUIT_OPEN_FAILURES) {
+        LOG.info("Circuit is closed as update succeeded.");
+      }
+      if (changed || consecutiveFailures > 0) {
+        currentIntervalSeconds = minInterval;
+      } else {
+        currentIntervalSeconds = (int) Math.min(maxInterval, currentIntervalSeconds * 2L);
+      }
+      consecutiveFailures = 0;
+    }
+  }
+
   @Override
   public void close() throws IOException {
-    closing = true;
-    List<Runnable> abandoned = scheduler.shutdownNow();
-    LOG.info("These tasks are abandoned as repository is closed: " + abandoned);
+    synchronized (updateLock) {
+      closing = true;
+      if (registration != null) {
+        registration.unregister();
+      }
+    }
+    if (schedulerOwned) {
+      scheduler.close();
+    }
+    changeDispatcher.close();
+    LOG.info("Repository is closed and updates are no longer scheduled.");
 
     super.close();
   }
 
+  private void fireChangeEvent(ChangeEvent event) {
+    changeDispatcher.publish(event);
+    for (ChangeListener listener : changeListeners) {
+      try {
+        listener.onChange(event);
+      } catch (RuntimeException e) {
+        LOG.error("Listener " + listener + " failed to handle " + event, e);
+      }
+    }
+  }
+
+  /**
+   * Get resource from the current snapshot. The resource and resources it references are read from
+   * the same snapshot regardless of updates afterwards.
+   */
+  @Override
+  public Resource getResource(String filePath) {
+    reclaimSnapshots();
+    Snapshot snapshot = currentSnapshot;
+    if (snapshot == null) {
+      return super.getResource(filePath);
+    }
+    return new SnapshotResource(
+        snapshot,
+        Resource.fromFile(new File(snapshot.directory + SystemUtils.FILE_SEPARATOR + filePath)));
+  }
+
+  private File getSnapshotsDirectory() {
+    return new File(getWorkingDirectory(), "snapshots");
+  }
+
+  /** @return Number of seconds before the next recurring check, which adapts to changes */
+  public int getCurrentUpdateIntervalSeconds() {
+    synchronized (updateLock) {
+      return currentIntervalSeconds;
+    }
+  }
+
+  /**
+   * The default longest checking interval is {@value #DEFAULT_MAX_UPDATE_INTERVAL_SECONDS} seconds.
+   *
+   * @return Longest number of seconds between recurring checks
+   */
+  public int getMaxUpdateIntervalSeconds() {
+    return maxUpdateIntervalSeconds;
+  }
+
   /**
    * The default checking interval is {@value #DEFAULT_UPDATE_INTERVAL_SECONDS} seconds.
    *
-   * @return Number of seconds between recurring check
+   * @return Number of seconds between recurring checks when source is changing
    */
   public int getUpdateIntervalSeconds() {
     return updateIntervalSeconds;
@@ -75,15 +426,157 @@ public class DynamicLocalResourceRepository extends StaticLocalResourceRepositor
   @Override
   public void init() throws Exception {
     super.init();
-    scheduleNextCheck();
+    publishSnapshot(null);
+    synchronized (updateLock) {
+      currentIntervalSeconds = updateIntervalSeconds;
+      if (scheduler == null) {
+        scheduler = new UpdateScheduler(1, 1);
+        schedulerOwned = true;
+      }
+      registration =
+          scheduler.register(
+              getWorkingDirectory().getName(), getSource().getRemoteHost(), updateTask);
+      scheduleNextCheck();
+    }
   }
 
+  /**
+   * Publish files of source as a new snapshot and make it the current snapshot
+   *
+   * @param event Changes since the current snapshot, or NULL to copy everything
+   */
+  private void publishSnapshot(ChangeEvent event) throws IOException {
+    File snapshotsDirectory = getSnapshotsDirectory();
+    Snapshot previous = currentSnapshot;
+    if (previous == null && snapshotsDirectory.isDirectory()) {
+      // Snapshots left by previous run in a persistent workspace
+      FileUtils.deleteDirectory(snapshotsDirectory);
+    }
+    File directory = new File(snapshotsDirectory, String.valueOf(snapshotSequence++));
+    FileFilter filter = file -> !file.getName().equals(".git") && !file.equals(snapshotsDirectory);
+    if (previous == null || event == null || !publishChanges(previous, directory, event, filter)) {
+      FileUtils.deleteDirectory(directory);
+      FileUtils.copyDirectory(getRepositoryDirectory(), directory, filter);
+    }
+
+    Snapshot snapshot = new Snapshot(directory);
+    snapshotReferences.add(new SnapshotReference(snapshot, reclaimableSnapshots));
+    currentSnapshot = snapshot;
+    LOG.info("Published snapshot " + directory);
+  }
+
+  /**
+   * Build a snapshot from the previous one by linking unchanged files and copying changed ones
+   *
+   * @return False if snapshot has to be copied as a whole
+   */
+  private boolean publishChanges(
+      Snapshot previous, File directory, ChangeEvent event, FileFilter filter) throws IOException {
+    // A changed path may be a directory when source only knows that something in it changed
+    Set<String> changedPaths = event.getChangedPaths();
+    Set<String> changedDirectories = new HashSet<>();
+    for (String path : changedPaths) {
+      if (new File(previous.directory, path).isDirectory()
+          || new File(getRepositoryDirectory(), path).isDirectory()) {
+        changedDirectories.add(path);
+      }
+    }
+    FileUtils.forceMkdir(directory);
+    if (!linkUnchangedFiles(
+        previous.directory.toPath(), directory.toPath(), changedPaths, changedDirectories)) {
+      return false;
+    }
+    for (String path : changedPaths) {
+      File source = new File(getRepositoryDirectory(), path);
+      File target = new File(directory, path);
+      if (source.isDirectory()) {
+        FileUtils.copyDirectory(source, target, filter);
+      } else if (source.isFile()) {
+        FileUtils.copyFile(source, target);
+      }
+    }
+    return true;
+  }
+
+  /** Delete directories of snapshots that are not reachable anymore */
+  private void reclaimSnapshots() {
+    for (Reference<? extends Snapshot> reference = reclaimableSnapshots.poll();
+        reference != null;
+        reference = reclaimableSnapshots.poll()) {
+      SnapshotReference snapshotReference = (SnapshotReference) reference;
+      snapshotReferences.remove(snapshotReference);
+      FileUtils.deleteQuietly(snapshotReference.directory);
+      LOG.info("Deleted unused snapshot " + snapshotReference.directory);
+    }
+  }
+
+  /** @param listener Listener to remove */
+  public void removeChangeListener(ChangeListener listener) {
+    changeListeners.remove(listener);
+  }
+
+  /**
+   * Ask for an update as soon as possible, typically because source is known to have changed. The
+   * call returns immediately. Requests that arrive before the requested update starts are served
+   * by the same update, and a request that arrives while an update is running causes another
+   * update right after it. The recurring check continues from the requested update.
+   */
+  public void requestUpdate() {
+    synchronized (updateLock) {
+      if (closing || updateRequested) {
+        return;
+      }
+      updateRequested = true;
+      if (!updateRunning && registration != null) {
+        scheduleNextCheck();
+      }
+    }
+  }
+
+  /** @return True if checks are suspended to the longest interval after repeated failures */
+  public boolean isCircuitOpen() {
+    synchronized (updateLock) {
+      return consecutiveFailures >= CIRCUIT_OPEN_FAILURES;
+    }
+  }
+
+  /** Must be called with update lock */
   private void scheduleNextCheck() {
-    int delay = Math.min(5, updateIntervalSeconds / 2 + random.nextInt(updateIntervalSeconds));
-    scheduler.schedule(updateTask, delay, TimeUnit.SECONDS);
+    if (updateRequested) {
+      registration.schedule(0, TimeUnit.SECONDS);
+      LOG.info("Requested update is scheduled");
+      return;
+    }
+    int jitter = (int) (currentIntervalSeconds * jitterRatio);
+    int delay = currentIntervalSeconds - jitter + random.nextInt(jitter * 2 + 1);
+    registration.schedule(delay, TimeUnit.SECONDS);
     LOG.info("Next check is scheduled after " + delay + " seconds");
   }
 
+  /**
+   * @param jitterRatio Part of interval by which each check is randomly moved earlier or later, so
+   *     that repositories started together don't check source at the same time
+   */
+  void setJitterRatio(double jitterRatio) {
+    Validate.isTrue(jitterRatio >= 0 && jitterRatio < 1, "Invalid jitter ratio: " + jitterRatio);
+    synchronized (updateLock) {
+      this.jitterRatio = jitterRatio;
+    }
+  }
+
+  /**
+   * Setting the longest checking interval that checks back off to while source is unchanged or
+   * failing. Modification takes effect after the next run dynamically.
+   *
+   * @param maxUpdateIntervalSeconds New value of longest checking interval in seconds
+   */
+  public void setMaxUpdateIntervalSeconds(int maxUpdateIntervalSeconds) {
+    Validate.isTrue(
+        maxUpdateIntervalSeconds > 0,
+        "Invalid max update interval: " + maxUpdateIntervalSeconds + " seconds.");
+    this.maxUpdateIntervalSeconds = maxUpdateIntervalSeconds;
+  }
+
   /**
    * Setting the checking interval. Modification of checking interval takes effect after the next
    * run dynamically.
@@ -96,4 +589,24 @@ public class DynamicLocalResourceRepository extends StaticLocalResourceRepositor
         "Invalid update interval: " + updateIntervalSeconds + " seconds.");
     this.updateIntervalSeconds = updateIntervalSeconds;
   }
+
+  /**
+   * Run updates in a scheduler shared with other repositories. The scheduler is not closed with
+   * this repository. It must be set before {@link #init()}.
+   *
+   * @param scheduler Shared update scheduler
+   */
+  public void setUpdateScheduler(UpdateScheduler scheduler) {
+    Validate.notNull(scheduler, "Scheduler can't be NULL.");
+    synchronized (updateLock) {
+      Validate.isTrue(registration == null, "Repository is already initialized.");
+      this.scheduler = scheduler;
+      this.schedulerOwned = false;
+    }
+  }
+
+  @Override
+  public Closeable watch(String pathOrPrefix, ChangeListener listener) {
+    return changeDispatcher.watch(pathOrPrefix, listener);
+  }
 }
@@ -0,0 +1,159 @@
+package org.cyclopsgroup.gitcon;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.lang.Validate;
+
+/**
+ * A string with {@literal ${name}} or {@literal ${name:default}} expressions, parsed once so that
+ * it can be resolved many times without scanning the string again. Both name and default may
+ * contain expressions themselves, as in {@literal ${config.${env}:${user.home}/config}}. A default
+ * value starts after the first colon of expression and may contain colons. <code>$$&#123;</code>
+ * is an escaped <code>$&#123;</code> that is kept as it is.
+ */
+public final class ExpressionTemplate {
+  /** Part of template that is either a literal or an expression */
+  private interface Segment {
+    void appendTo(StringBuilder out, VariableResolver resolver);
+  }
+
+  private static final class Literal implements Segment {
+    private final String text;
+
+    private Literal(String text) {
+      this.text = text;
+    }
+
+    @Override
+    public void appendTo(StringBuilder out, VariableResolver resolver) {
+      out.append(text);
+    }
+  }
+
+  private static final class Variable implements Segment {
+    private final ExpressionTemplate defaultValue;
+    private final ExpressionTemplate name;
+
+    private Variable(ExpressionTemplate name, ExpressionTemplate defaultValue) {
+      this.name = name;
+      this.defaultValue = defaultValue;
+    }
+
+    @Override
+    public void appendTo(StringBuilder out, VariableResolver resolver) {
+      String variable = name.resolve(resolver);
+      String value = resolver.resolve(variable);
+      if (value != null) {
+        out.append(value);
+      } else if (defaultValue != null) {
+        defaultValue.appendTo(out, resolver);
+      } else {
+        throw new IllegalArgumentException("Variable " + variable + " is not defined");
+      }
+    }
+  }
+
+  /** Parser of one level of template that stops at any of given characters outside expressions */
+  private static class Parser {
+    private final String input;
+    private int position;
+
+    private Parser(String input) {
+      this.input = input;
+    }
+
+    private ExpressionTemplate parse(String stops) {
+      List<Segment> segments = new ArrayList<>();
+      StringBuilder literal = new StringBuilder();
+      while (position < input.length()) {
+        char c = input.charAt(position);
+        if (stops.indexOf(c) != -1) {
+          break;
+        }
+        if (input.startsWith("$${", position)) {
+          literal.append("${");
+          position += 3;
+        } else if (input.startsWith("${", position)) {
+          int start = position;
+          position += 2;
+          ExpressionTemplate name = parse(":}");
+          ExpressionTemplate defaultValue = null;
+          if (position < input.length() && input.charAt(position) == ':') {
+            position++;
+            defaultValue = parse("}");
+          }
+          if (position >= input.length()) {
+            throw new IllegalArgumentException("${ at " + start + " is not closed in " + input);
+          }
+          if (name.segments.length == 0) {
+            throw new IllegalArgumentException("Empty variable name at " + start + " in " + input);
+          }
+          position++;
+          if (literal.length() > 0) {
+            segments.add(new Literal(literal.toString()));
+            literal.setLength(0);
+          }
+          segments.add(new Variable(name, defaultValue));
+        } else {
+          literal.append(c);
+          position++;
+        }
+      }
+      if (literal.length() > 0) {
+        segments.add(new Literal(literal.toString()));
+      }
+      return new ExpressionTemplate(segments.toArray(new Segment[0]));
+    }
+  }
+
+  /**
+   * @param template Template to parse
+   * @return Parsed template
+   * @throws IllegalArgumentException If an expression is not closed or has no name
+   */
+  public static ExpressionTemplate compile(String template) {
+    Validate.notNull(template, "Template can't be NULL.");
+    return new Parser(template).parse("");
+  }
+
+  /** Constant value when template has no expression, or NULL */
+  private final String constant;
+
+  private final Segment[] segments;
+
+  private ExpressionTemplate(Segment[] segments) {
+    this.segments = segments;
+    if (segments.length == 0) {
+      constant = "";
+    } else if (segments.length == 1 && segments[0] instanceof Literal) {
+      constant = ((Literal) segments[0]).text;
+    } else {
+      constant = null;
+    }
+  }
+
+  private void appendTo(StringBuilder out, VariableResolver resolver) {
+    for (Segment segment : segments) {
+      segment.appendTo(out, resolver);
+    }
+  }
+
+  /** @return True if template has no expression, and resolves to the same string regardless */
+  public boolean isConstant() {
+    return constant != null;
+  }
+
+  /**
+   * @param resolver Resolver of variables
+   * @return Result of replacing expressions with their values
+   * @throws IllegalArgumentException If a variable without default value is not defined
+   */
+  public String resolve(VariableResolver resolver) {
+    if (constant != null) {
+      return constant;
+    }
+    StringBuilder out = new StringBuilder();
+    appendTo(out, resolver);
+    return out.toString();
+  }
+}
@@ -1,61 +1,44 @@
 package org.cyclopsgroup.gitcon;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Shortcuts of {@link ExpressionTemplate}. Templates are compiled once and kept, so that strings
+ * populated repeatedly are not parsed again.
+ */
 public class ExpressionUtils {
+  private static final int MAX_CACHED_TEMPLATES = 1024;
+
+  private static final ConcurrentMap<String, ExpressionTemplate> templates =
+      new ConcurrentHashMap<>();
+
+  /**
+   * @param input String to populate
+   * @return Compiled template of given string
+   */
+  public static ExpressionTemplate compile(String input) {
+    ExpressionTemplate template = templates.get(input);
+    if (template == null) {
+      template = ExpressionTemplate.compile(input);
+      if (templates.size() < MAX_CACHED_TEMPLATES) {
+        templates.putIfAbsent(input, template);
+      }
+    }
+    return template;
+  }
+
   public static String populate(String input) {
-    Map<Object, Object> props = new HashMap<Object, Object>();
-    props.putAll(System.getenv());
-    props.putAll(System.getProperties());
-    return populateInternally(input, props);
+    return compile(input).resolve(VariableResolver.SYSTEM);
   }
 
   public static String populate(String input, Map<String, String> props) {
-    return populateInternally(input, props);
+    return compile(input).resolve(VariableResolver.of(props));
   }
 
   public static String populate(String input, Properties props) {
-    return populateInternally(input, props);
-  }
-
-  private static String populateInternally(
-      String input, Map<? extends Object, ? extends Object> map) {
-    StringBuilder result = new StringBuilder();
-    String in = input;
-    int start;
-    for (; ; ) {
-      start = in.indexOf("${");
-      if (start == -1) {
-        result.append(in);
-        break;
-      }
-      int end = in.indexOf("}");
-      if (end < start) {
-        throw new IllegalArgumentException("} is before ${ in " + in);
-      }
-      result.append(in.substring(0, start));
-      String expression = in.substring(start + 2, end);
-      String defaultValue = null;
-      int delimiter = expression.indexOf(':');
-      String var;
-      if (delimiter == -1) {
-        var = expression;
-      } else {
-        var = expression.substring(0, delimiter);
-        defaultValue = expression.substring(delimiter + 1);
-      }
-      String value = (String) map.get(var);
-      if (value == null && defaultValue == null) {
-        throw new IllegalArgumentException("Variable " + var + " is not defined");
-      }
-      result.append(value == null ? defaultValue : value);
-      if (end == in.length() - 1) {
-        break;
-      }
-      in = in.substring(end + 1);
-    }
-    return result.toString();
+    return compile(input).resolve(VariableResolver.of(props));
   }
 }
@@ -1,13 +1,47 @@
 package org.cyclopsgroup.gitcon;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.SystemUtils;
 import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A simple implementation that points to a local directory to get resources. Changes of files are
+ * watched with a {@link WatchService} of the directory and all its subdirectories, which starts at
+ * the first call of {@link #watch(String, ChangeListener)}.
+ */
+public class FileSystemResourceRepository implements Closeable, LocalResourceRepository {
+  private static final Log LOG = LogFactory.getLog(FileSystemResourceRepository.class);
+
+  private static final List<String> NO_PATHS = Collections.emptyList();
+
+  private ChangeDispatcher changeDispatcher;
 
-/** A simple implementation that points to a local directory to get resources */
-public class FileSystemResourceRepository implements LocalResourceRepository {
   private File rootDirectory;
 
+  private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+
+  private WatchService watchService;
+
   public FileSystemResourceRepository(File rootDirectory) {
     File root = rootDirectory.getAbsoluteFile();
     Validate.isTrue(root.isDirectory(), "Root directory is not a directory: " + root);
@@ -18,6 +52,17 @@ public class FileSystemResourceRepository implements LocalResourceRepository {
     this(new File(ExpressionUtils.populate(rootDirectory)));
   }
 
+  /** Stop watching changes of files */
+  @Override
+  public synchronized void close() throws IOException {
+    if (watchService != null) {
+      watchService.close();
+    }
+    if (changeDispatcher != null) {
+      changeDispatcher.close();
+    }
+  }
+
   @Override
   public File getRepositoryDirectory() {
     return rootDirectory;
@@ -28,4 +73,103 @@ public class FileSystemResourceRepository implements LocalResourceRepository {
     return Resource.fromFile(
         new File(rootDirectory.getAbsolutePath() + SystemUtils.FILE_SEPARATOR + filePath));
   }
+
+  private void pollWatchService() {
+    Path root = rootDirectory.toPath();
+    try {
+      while (true) {
+        WatchKey key = watchService.take();
+        Path directory = watchedDirectories.get(key);
+        // Events of the same file are reduced as ChangeEvent.merge() does, so that a file
+        // created and then modified is added, and a file created and then deleted is dropped
+        ChangeEvent change = new ChangeEvent(null, null, NO_PATHS, NO_PATHS, NO_PATHS);
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+            LOG.warn("Some changes of files under " + directory + " are lost.");
+            continue;
+          }
+          Path path = directory.resolve((Path) event.context());
+          List<String> paths =
+              Collections.singletonList(
+                  FilenameUtils.separatorsToUnix(root.relativize(path).toString()));
+          if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+            change = change.merge(new ChangeEvent(null, null, NO_PATHS, NO_PATHS, paths));
+          } else if (Files.isDirectory(path)) {
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+              // Files may be created in the new directory before it's registered
+              List<String> added = new ArrayList<>();
+              try {
+                for (Path file : registerDirectories(path)) {
+                  added.add(FilenameUtils.separatorsToUnix(root.relativize(file).toString()));
+                }
+              } catch (IOException e) {
+                LOG.warn("Can't watch new directory " + path, e);
+              }
+              change = change.merge(new ChangeEvent(null, null, added, NO_PATHS, NO_PATHS));
+            }
+          } else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+            change = change.merge(new ChangeEvent(null, null, paths, NO_PATHS, NO_PATHS));
+          } else {
+            change = change.merge(new ChangeEvent(null, null, NO_PATHS, paths, NO_PATHS));
+          }
+        }
+        if (!key.reset()) {
+          watchedDirectories.remove(key);
+        }
+        if (!change.isEmpty()) {
+          changeDispatcher.publish(change);
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      LOG.info("Stopped watching changes of " + rootDirectory);
+    }
+  }
+
+  /**
+   * Register the directory and its subdirectories to watch service
+   *
+   * @return Files found in directories
+   */
+  private List<Path> registerDirectories(Path directory) throws IOException {
+    List<Path> files = new ArrayList<>();
+    Files.walkFileTree(
+        directory,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+              throws IOException {
+            WatchKey key =
+                dir.register(
+                    watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            watchedDirectories.put(key, dir);
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            files.add(file);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    return files;
+  }
+
+  @Override
+  public synchronized Closeable watch(String pathOrPrefix, ChangeListener listener)
+      throws IOException {
+    if (watchService == null) {
+      watchService = rootDirectory.toPath().getFileSystem().newWatchService();
+      registerDirectories(rootDirectory.toPath());
+      changeDispatcher = new ChangeDispatcher(rootDirectory.getName());
+      Thread thread =
+          new Thread(this::pollWatchService, "gitcon-watch-" + rootDirectory.getName());
+      thread.setDaemon(true);
+      thread.start();
+      LOG.info("Started watching changes of " + rootDirectory);
+    }
+    return changeDispatcher.watch(pathOrPrefix, listener);
+  }
 }
@@ -4,6 +4,16 @@ import java.io.File;
 
 /** A source that gets files from a logical repository into physical local file system */
 public interface FileSystemSource {
+  /**
+   * Host that files come from, which allows updates against the same host to be limited. See
+   * {@link UpdateScheduler}.
+   *
+   * @return Name of remote host, or NULL if it's unknown or source is local
+   */
+  default String getRemoteHost() {
+    return null;
+  }
+
   /**
    * Get files from logical source into local working directory when application starts
    *
@@ -21,7 +31,9 @@ public interface FileSystemSource {
    * incremental modifications and is expected to be called repeatedly.
    *
    * @param workingDirectory Local working directory
+   * @return Files changed by this call with paths relative to the directory returned by {@link
+   *     #initWorkingDirectory(File)}, or NULL if no file is changed
    * @throws Exception Allows any exception
    */
-  void updateWorkingDirectory(File workingDirectory) throws Exception;
+  ChangeEvent updateWorkingDirectory(File workingDirectory) throws Exception;
 }
@@ -0,0 +1,112 @@
+package org.cyclopsgroup.gitcon;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Set;
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Holder of the latest {@link ConfigSnapshot} of a properties file in repository. When the file, or
+ * any file it includes, is changed, a new snapshot is loaded and published as a whole, so that
+ * readers never see a mix of old and new values. Files that are not changed are not read again.
+ *
+ * <p>Files are identified by their paths in repository, and each read gets the resource from
+ * repository again, so that a repository that publishes a new version of files with each update
+ * is read at its latest version.
+ *
+ * <p>If repository doesn't support {@link ResourceRepository#watch(String, ChangeListener)}, the
+ * snapshot is only refreshed by {@link #reload()}.
+ */
+public class LiveConfigSnapshot implements Closeable, ChangeListener {
+  private static final Log LOG = LogFactory.getLog(LiveConfigSnapshot.class);
+
+  private final PropertiesLoader loader = new PropertiesLoader();
+
+  private final String path;
+
+  private final ResourceRepository repository;
+
+  private final RepositoryPathResource resource;
+
+  private volatile ConfigSnapshot snapshot;
+
+  private Closeable watch;
+
+  /**
+   * Start watching changes and load the initial snapshot
+   *
+   * @param repository Repository that contains the file
+   * @param path Path of properties file in repository
+   * @throws IOException If file can't be read, or changes can't be watched
+   */
+  public LiveConfigSnapshot(ResourceRepository repository, String path) throws IOException {
+    Validate.notNull(repository, "Repository can't be NULL.");
+    Validate.notEmpty(path, "Path can't be empty.");
+    this.repository = repository;
+    this.path = path;
+    this.resource = new RepositoryPathResource(repository, path);
+    // Watch before the first load, so that no change is missed in between
+    try {
+      // Included files can be anywhere in repository
+      watch = repository.watch("", this);
+    } catch (UnsupportedOperationException e) {
+      LOG.info("Repository doesn't support watching, " + path + " is reloaded on demand only.");
+    }
+    try {
+      publish();
+    } catch (IOException | RuntimeException e) {
+      close();
+      throw e;
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (watch != null) {
+      watch.close();
+      watch = null;
+    }
+  }
+
+  /** @return The latest snapshot, which is never NULL */
+  public ConfigSnapshot get() {
+    return snapshot;
+  }
+
+  @Override
+  public void onChange(ChangeEvent event) {
+    boolean affected = false;
+    for (String changedPath : event.getChangedPaths()) {
+      Set<Resource> invalidated =
+          loader.invalidate(new RepositoryPathResource(repository, changedPath));
+      affected = affected || invalidated.contains(resource);
+    }
+    if (!affected) {
+      return;
+    }
+    try {
+      publish();
+    } catch (IOException | RuntimeException e) {
+      LOG.error("Can't reload " + path + ", previous snapshot is kept: " + e.getMessage(), e);
+    }
+  }
+
+  /** Files loaded before and not invalidated by changes since then are not read again */
+  private synchronized void publish() throws IOException {
+    snapshot = ConfigSnapshot.of(loader.load(resource));
+  }
+
+  /**
+   * Read the file and everything it includes again, and publish a new snapshot
+   *
+   * @return The new snapshot
+   * @throws IOException If file can't be read
+   */
+  public synchronized ConfigSnapshot reload() throws IOException {
+    loader.clear();
+    publish();
+    return snapshot;
+  }
+}
@@ -0,0 +1,231 @@
+package org.cyclopsgroup.gitcon;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Cache of properties loaded from repositories, keyed by repository and path of file, and validated
+ * by {@link Resource#getVersion()} of the file and every file it includes. A lookup of unchanged
+ * files costs checking their versions, such as a stat of local files, without reading or parsing
+ * them. Files whose version is unknown are loaded every time.
+ *
+ * <p>Entries keep paths and versions rather than resources, so they stay valid across updates of a
+ * repository that creates new resources for unchanged files, such as {@link
+ * DynamicLocalResourceRepository}, and don't keep anything of an old version of repository
+ * reachable.
+ *
+ * <p>Lookups don't lock. The cache is bounded by the estimated memory of cached properties, and
+ * entries that are least recently used are evicted first when the bound is exceeded.
+ */
+public class PropertiesCache {
+  /** Properties loaded from a file and paths and versions of the files they came from */
+  private static class Entry {
+    private volatile long lastAccess;
+    private final List<String> paths;
+    private final Properties properties;
+    private final List<String> versions;
+    private final long weight;
+
+    private Entry(
+        Properties properties, List<String> paths, List<String> versions, long lastAccess) {
+      this.properties = properties;
+      this.paths = paths;
+      this.versions = versions;
+      this.lastAccess = lastAccess;
+      this.weight = estimateWeight(properties);
+    }
+
+    private boolean isCurrent(ResourceRepository repository) {
+      for (int i = 0; i < paths.size(); i++) {
+        Resource resource = new RepositoryPathResource(repository, paths.get(i));
+        if (!versions.get(i).equals(getVersionQuietly(resource))) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private static final long DEFAULT_MAX_WEIGHT_BYTES = 16L * 1024 * 1024;
+
+  /** Rough memory taken by a properties entry besides its characters */
+  private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+  private static final Log LOG = LogFactory.getLog(PropertiesCache.class);
+
+  private static Properties copy(Properties properties) {
+    Properties result = new Properties();
+    result.putAll(properties);
+    return result;
+  }
+
+  private static long estimateWeight(Properties properties) {
+    long weight = ENTRY_OVERHEAD_BYTES;
+    for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+      weight += ENTRY_OVERHEAD_BYTES;
+      weight += 2L * (entry.getKey().toString().length() + entry.getValue().toString().length());
+    }
+    return weight;
+  }
+
+  private static String getVersionQuietly(Resource resource) {
+    try {
+      return resource.getVersion();
+    } catch (IOException e) {
+      LOG.warn("Can't get version of " + resource + ", it's loaded without cache.", e);
+      return null;
+    }
+  }
+
+  private final AtomicLong accessSequence = new AtomicLong();
+
+  private final ConcurrentMap<RepositoryPathResource, Entry> entries = new ConcurrentHashMap<>();
+
+  private final LongAdder evictionCount = new LongAdder();
+
+  private final LongAdder hitCount = new LongAdder();
+
+  private final long maxWeightBytes;
+
+  private final LongAdder missCount = new LongAdder();
+
+  private final AtomicLong weightBytes = new AtomicLong();
+
+  /** Constructor with the default bound of {@value #DEFAULT_MAX_WEIGHT_BYTES} bytes */
+  public PropertiesCache() {
+    this(DEFAULT_MAX_WEIGHT_BYTES);
+  }
+
+  /** @param maxWeightBytes Bound of estimated memory of cached properties in bytes */
+  public PropertiesCache(long maxWeightBytes) {
+    Validate.isTrue(maxWeightBytes >= 0, "Invalid cache size " + maxWeightBytes);
+    this.maxWeightBytes = maxWeightBytes;
+  }
+
+  private void evictIfNecessary() {
+    if (weightBytes.get() <= maxWeightBytes) {
+      return;
+    }
+    synchronized (this) {
+      List<Map.Entry<RepositoryPathResource, Entry>> candidates =
+          new ArrayList<>(entries.entrySet());
+      candidates.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+      for (Map.Entry<RepositoryPathResource, Entry> candidate : candidates) {
+        if (weightBytes.get() <= maxWeightBytes) {
+          break;
+        }
+        if (entries.remove(candidate.getKey(), candidate.getValue())) {
+          weightBytes.addAndGet(-candidate.getValue().weight);
+          evictionCount.increment();
+        }
+      }
+    }
+  }
+
+  /**
+   * Get properties of a file merged with the files it includes, as {@link
+   * Resource#readAsProperties()} does
+   *
+   * @param repository Repository the file belongs to
+   * @param path Path of file in repository
+   * @return A new properties object that caller is free to modify
+   * @throws IOException If the file can't be read
+   */
+  public Properties get(ResourceRepository repository, String path) throws IOException {
+    Validate.notNull(repository, "Repository can't be NULL.");
+    Validate.notEmpty(path, "Path can't be empty.");
+    RepositoryPathResource resource = new RepositoryPathResource(repository, path);
+    Entry entry = entries.get(resource);
+    if (entry != null && entry.isCurrent(repository)) {
+      hitCount.increment();
+      entry.lastAccess = accessSequence.incrementAndGet();
+      return copy(entry.properties);
+    }
+    missCount.increment();
+
+    // Versions known before loading must not change during it, or the result may be stale
+    Map<Resource, String> versionsBefore = new HashMap<>();
+    versionsBefore.put(resource, getVersionQuietly(resource));
+    if (entry != null) {
+      for (String p : entry.paths) {
+        Resource r = new RepositoryPathResource(repository, p);
+        versionsBefore.put(r, getVersionQuietly(r));
+      }
+    }
+
+    PropertiesLoader loader = new PropertiesLoader();
+    Properties properties = loader.load(resource);
+    List<Resource> resources = new ArrayList<>();
+    resources.add(resource);
+    resources.addAll(loader.getIncludedResources(resource));
+    List<String> paths = new ArrayList<>();
+    List<String> versions = new ArrayList<>();
+    for (Resource r : resources) {
+      String version = getVersionQuietly(r);
+      if (version == null
+          || (versionsBefore.containsKey(r) && !version.equals(versionsBefore.get(r)))) {
+        remove(resource);
+        return properties;
+      }
+      paths.add(((RepositoryPathResource) r).getPath());
+      versions.add(version);
+    }
+
+    Entry loaded = new Entry(copy(properties), paths, versions, accessSequence.incrementAndGet());
+    Entry previous = entries.put(resource, loaded);
+    weightBytes.addAndGet(loaded.weight - (previous == null ? 0 : previous.weight));
+    evictIfNecessary();
+    return properties;
+  }
+
+  /** @return Number of entries evicted to keep the cache within its bound */
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+  /** @return Number of lookups that found current properties in cache */
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  /** @return Number of lookups that loaded properties from resources */
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  /** @return Estimated memory of cached properties in bytes */
+  public long getWeightBytes() {
+    return weightBytes.get();
+  }
+
+  /** Remove everything from cache */
+  public void invalidateAll() {
+    for (RepositoryPathResource resource : entries.keySet()) {
+      remove(resource);
+    }
+  }
+
+  private void remove(RepositoryPathResource resource) {
+    Entry removed = entries.remove(resource);
+    if (removed != null) {
+      weightBytes.addAndGet(-removed.weight);
+    }
+  }
+
+  /** @return Number of cached entries */
+  public int size() {
+    return entries.size();
+  }
+}
@@ -0,0 +1,65 @@
+package org.cyclopsgroup.gitcon;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Interpolates values of properties that refer to other properties. Each value is resolved once,
+ * depth first, so that a value is resolved after all values it refers to, and the whole set takes
+ * time linear to its size. Names that are not properties are resolved by a fallback resolver.
+ */
+class PropertiesInterpolator implements VariableResolver {
+  /**
+   * @param properties Properties to interpolate
+   * @param fallback Resolver of names that are not in properties
+   * @return A new properties object with interpolated values
+   * @throws IllegalArgumentException If values refer to each other in a cycle, or refer to an
+   *     undefined variable without default value
+   */
+  static Properties interpolate(Properties properties, VariableResolver fallback) {
+    PropertiesInterpolator interpolator = new PropertiesInterpolator(properties, fallback);
+    Properties result = new Properties();
+    for (String name : properties.stringPropertyNames()) {
+      result.setProperty(name, interpolator.resolve(name));
+    }
+    return result;
+  }
+
+  private final VariableResolver fallback;
+
+  private final Properties properties;
+
+  private final Map<String, String> resolved = new HashMap<>();
+
+  /** Names being resolved, in the order they are referred */
+  private final Set<String> resolving = new LinkedHashSet<>();
+
+  private PropertiesInterpolator(Properties properties, VariableResolver fallback) {
+    this.properties = properties;
+    this.fallback = fallback;
+  }
+
+  @Override
+  public String resolve(String name) {
+    String value = resolved.get(name);
+    if (value != null) {
+      return value;
+    }
+    String raw = properties.getProperty(name);
+    if (raw == null) {
+      return fallback.resolve(name);
+    }
+    if (!resolving.add(name)) {
+      throw new IllegalArgumentException(
+          "Variable cycle is found: " + StringUtils.join(resolving, " -> ") + " -> " + name);
+    }
+    value = ExpressionTemplate.compile(raw).resolve(this);
+    resolving.remove(name);
+    resolved.put(name, value);
+    return value;
+  }
+}
@@ -0,0 +1,332 @@
+package org.cyclopsgroup.gitcon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+
+/**
+ * Loads properties files that include other files with an {@literal include} property, which is a
+ * comma separated list of paths relative to the including file. Properties of included files are
+ * applied in the order they are listed and are overridden by the including file.
+ *
+ * <p>Loader remembers the parsed content of each file and the merged result of each file with its
+ * includes, so a file shared by several others is read and merged only once. It also keeps the
+ * graph of includes, so that {@link #invalidate(Resource)} discards the results of only the files
+ * that depend on a changed file, and the next load reads nothing but the changed file again.
+ *
+ * <p>Optionally, values that refer to other properties with {@literal ${name}} expressions are
+ * interpolated after files are merged, see {@link #setVariableResolver(VariableResolver)}.
+ */
+public class PropertiesLoader {
+  private static Properties parse(InputStream in) throws IOException {
+    Properties props = new Properties();
+    props.load(in);
+    return props;
+  }
+
+  private final Map<Resource, Set<Resource>> dependents = new HashMap<>();
+
+  private final Map<Resource, List<Resource>> includes = new HashMap<>();
+
+  private final Map<Resource, Properties> resolved = new HashMap<>();
+
+  private final Map<Resource, Properties> sources = new HashMap<>();
+
+  private volatile VariableResolver variableResolver;
+
+  /** Forget everything loaded so far */
+  public synchronized void clear() {
+    dependents.clear();
+    includes.clear();
+    resolved.clear();
+    sources.clear();
+  }
+
+  /**
+   * @param resource A loaded resource
+   * @return Resources that include the given resource directly or indirectly
+   */
+  public synchronized Set<Resource> getDependents(Resource resource) {
+    Set<Resource> result = new LinkedHashSet<>();
+    List<Resource> queue = new ArrayList<>(Collections.singletonList(resource));
+    while (!queue.isEmpty()) {
+      for (Resource dependent : dependents.getOrDefault(queue.remove(0), Collections.emptySet())) {
+        if (result.add(dependent)) {
+          queue.add(dependent);
+        }
+      }
+    }
+    result.remove(resource);
+    return result;
+  }
+
+  /**
+   * @param resource A loaded resource
+   * @return Resources included by the given resource directly or indirectly
+   */
+  public synchronized Set<Resource> getIncludedResources(Resource resource) {
+    Set<Resource> result = new LinkedHashSet<>();
+    List<Resource> queue = new ArrayList<>(Collections.singletonList(resource));
+    while (!queue.isEmpty()) {
+      for (Resource reference : includes.getOrDefault(queue.remove(0), Collections.emptyList())) {
+        if (result.add(reference)) {
+          queue.add(reference);
+        }
+      }
+    }
+    result.remove(resource);
+    return result;
+  }
+
+  /** Must be called with lock */
+  private List<Resource> getMissingSources(List<Resource> level) {
+    List<Resource> missing = new ArrayList<>();
+    for (Resource resource : level) {
+      if (!sources.containsKey(resource)) {
+        missing.add(resource);
+      }
+    }
+    return missing;
+  }
+
+  /**
+   * Discard the content of a changed resource, and merged results of resources that depend on it
+   *
+   * @param resource The changed resource
+   * @return The resource and all resources that include it directly or indirectly, whose next
+   *     load reflects the change
+   */
+  public synchronized Set<Resource> invalidate(Resource resource) {
+    Set<Resource> affected = new LinkedHashSet<>();
+    affected.add(resource);
+    affected.addAll(getDependents(resource));
+    sources.remove(resource);
+    for (Resource r : affected) {
+      resolved.remove(r);
+    }
+    return affected;
+  }
+
+  /**
+   * Discard resources changed by an update of repository
+   *
+   * @param event Changes of files
+   * @param repository Repository the event comes from
+   * @return Resources whose next load reflects the change
+   * @see #invalidate(Resource)
+   */
+  public Set<Resource> invalidate(ChangeEvent event, ResourceRepository repository) {
+    Set<Resource> affected = new LinkedHashSet<>();
+    for (String path : event.getChangedPaths()) {
+      affected.addAll(invalidate(repository.getResource(path)));
+    }
+    return affected;
+  }
+
+  /**
+   * Load properties of a resource merged with everything it includes
+   *
+   * @param resource Resource to load
+   * @return A new properties object that caller is free to modify
+   * @throws IOException If a resource can't be read, includes form a cycle, or values can't be
+   *     interpolated
+   */
+  public synchronized Properties load(Resource resource) throws IOException {
+    Validate.notNull(resource, "Resource can't be NULL.");
+    Set<Resource> visited = new HashSet<>(Collections.singleton(resource));
+    for (List<Resource> level = Collections.singletonList(resource);
+        !level.isEmpty();
+        level = nextLevel(level, visited)) {
+      List<Resource> missing = getMissingSources(level);
+      if (!missing.isEmpty()) {
+        Map<Resource, Properties> loaded = new LinkedHashMap<>();
+        resource.readAll(missing, (r, in) -> loaded.put(r, parse(in)));
+        setSources(missing, loaded);
+      }
+    }
+    return merge(resource);
+  }
+
+  /**
+   * Load properties asynchronously as {@link #load(Resource)} does. Files of the same level of
+   * includes are read in parallel with {@link Resource#readAllAsync(List,
+   * Resource.BatchStreamConsumer, Executor)}, so loading takes about one read per level. Files are
+   * read without holding the lock of loader.
+   *
+   * @param resource Resource to load
+   * @param executor Executor to run reads
+   * @return Future of a new properties object that caller is free to modify
+   */
+  public CompletableFuture<Properties> loadAsync(Resource resource, Executor executor) {
+    Validate.notNull(resource, "Resource can't be NULL.");
+    Validate.notNull(executor, "Executor can't be NULL.");
+    Set<Resource> visited = new HashSet<>(Collections.singleton(resource));
+    return loadLevelAsync(resource, Collections.singletonList(resource), visited, executor)
+        .thenApply(
+            v -> {
+              synchronized (this) {
+                try {
+                  return merge(resource);
+                } catch (IOException e) {
+                  throw new CompletionException(e);
+                }
+              }
+            });
+  }
+
+  private CompletableFuture<Void> loadLevelAsync(
+      Resource root, List<Resource> level, Set<Resource> visited, Executor executor) {
+    if (level.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+    List<Resource> missing;
+    synchronized (this) {
+      missing = getMissingSources(level);
+    }
+    CompletableFuture<Void> read = CompletableFuture.completedFuture(null);
+    if (!missing.isEmpty()) {
+      Map<Resource, Properties> loaded = new ConcurrentHashMap<>();
+      read =
+          root.readAllAsync(missing, (r, in) -> loaded.put(r, parse(in)), executor)
+              .thenRun(
+                  () -> {
+                    synchronized (this) {
+                      try {
+                        setSources(missing, loaded);
+                      } catch (IOException e) {
+                        throw new CompletionException(e);
+                      }
+                    }
+                  });
+    }
+    return read.thenCompose(
+        v -> {
+          List<Resource> nextLevel;
+          synchronized (this) {
+            nextLevel = nextLevel(level, visited);
+          }
+          return loadLevelAsync(root, nextLevel, visited, executor);
+        });
+  }
+
+  /** Must be called with lock */
+  private Properties merge(Resource resource) throws IOException {
+    Properties merged = resolve(resource, new LinkedHashSet<>());
+    VariableResolver resolver = variableResolver;
+    if (resolver != null) {
+      try {
+        return PropertiesInterpolator.interpolate(merged, resolver);
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Can't interpolate " + resource + ": " + e.getMessage(), e);
+      }
+    }
+    Properties result = new Properties();
+    result.putAll(merged);
+    return result;
+  }
+
+  /** Must be called with lock, after sources of the level are known */
+  private List<Resource> nextLevel(List<Resource> level, Set<Resource> visited) {
+    List<Resource> nextLevel = new ArrayList<>();
+    for (Resource resource : level) {
+      for (Resource reference : includes.get(resource)) {
+        if (visited.add(reference)) {
+          nextLevel.add(reference);
+        }
+      }
+    }
+    return nextLevel;
+  }
+
+  private Properties resolve(Resource resource, Set<Resource> path) throws IOException {
+    Properties result = resolved.get(resource);
+    if (result != null) {
+      return result;
+    }
+    if (!path.add(resource)) {
+      throw new IOException(
+          "Include cycle is found: " + StringUtils.join(path, " -> ") + " -> " + resource);
+    }
+    List<Resource> references = includes.get(resource);
+    Properties source = sources.get(resource);
+    if (references.isEmpty()) {
+      result = source;
+    } else {
+      result = new Properties();
+      for (Resource reference : references) {
+        result.putAll(resolve(reference, path));
+      }
+      result.putAll(source);
+    }
+    path.remove(resource);
+    resolved.put(resource, result);
+    return result;
+  }
+
+  private void setSource(Resource resource, Properties source) {
+    String includeProperty = source.getProperty("include", null);
+    source.remove("include");
+    List<Resource> references = new ArrayList<>();
+    if (!StringUtils.isBlank(includeProperty)) {
+      for (String include : StringUtils.split(includeProperty, ',')) {
+        Resource reference = resource.reference(include.trim());
+        if (!references.contains(reference)) {
+          references.add(reference);
+        }
+      }
+    }
+
+    List<Resource> previous = includes.put(resource, references);
+    if (previous != null) {
+      for (Resource reference : previous) {
+        Set<Resource> set = dependents.get(reference);
+        if (set != null) {
+          set.remove(resource);
+        }
+      }
+    }
+    for (Resource reference : references) {
+      dependents.computeIfAbsent(reference, r -> new HashSet<>()).add(resource);
+    }
+    sources.put(resource, source);
+  }
+
+  /** Must be called with lock */
+  private void setSources(List<Resource> resources, Map<Resource, Properties> loaded)
+      throws IOException {
+    for (Resource resource : resources) {
+      Properties source = loaded.get(resource);
+      if (source == null) {
+        throw new IOException("Resource " + resource + " is not read.");
+      }
+      setSource(resource, source);
+    }
+  }
+
+  /**
+   * Interpolate {@literal ${name}} and {@literal ${name:default}} expressions in values of loaded
+   * properties, where name refers to another property in the merged result of includes. Names that
+   * are not properties are resolved by given resolver, such as {@link VariableResolver#SYSTEM}, or
+   * {@link VariableResolver#NONE} to only refer to properties. Interpolation is off by default.
+   *
+   * @param variableResolver Resolver of names that are not properties, or NULL to not interpolate
+   */
+  public void setVariableResolver(VariableResolver variableResolver) {
+    this.variableResolver = variableResolver;
+  }
+}
@@ -0,0 +1,90 @@
+package org.cyclopsgroup.gitcon;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Resource of a path in repository that reads whatever repository has at the path. It's identified
+ * by repository and path only, and gets the resource from repository again for each read, so that
+ * it neither keeps an old version of a repository reachable nor goes stale when repository
+ * publishes a new version of files.
+ */
+class RepositoryPathResource extends Resource {
+  private final String path;
+
+  private final ResourceRepository repository;
+
+  /**
+   * @param repository Repository the path belongs to
+   * @param path Path of file in repository
+   */
+  RepositoryPathResource(ResourceRepository repository, String path) {
+    this.repository = repository;
+    this.path = StringUtils.removeStart(path, "/");
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof RepositoryPathResource)) {
+      return false;
+    }
+    RepositoryPathResource that = (RepositoryPathResource) o;
+    return that.repository == repository && that.path.equals(path);
+  }
+
+  @Override
+  public ResourceMetadata getMetadata() throws IOException {
+    return repository.getResource(path).getMetadata();
+  }
+
+  /** @return Path of file in repository, without leading slash */
+  String getPath() {
+    return path;
+  }
+
+  @Override
+  public String getVersion() throws IOException {
+    return repository.getResource(path).getVersion();
+  }
+
+  @Override
+  public int hashCode() {
+    return System.identityHashCode(repository) * 31 + path.hashCode();
+  }
+
+  @Override
+  public void read(CheckedStreamConsumer consumer) throws IOException {
+    repository.getResource(path).read(consumer);
+  }
+
+  /** Resources of repository are read as one group, so that a remote one fetches them at once */
+  @Override
+  protected void readAll(List<Resource> resources, BatchStreamConsumer consumer)
+      throws IOException {
+    List<Resource> delegates = new ArrayList<>();
+    Map<Resource, Resource> paths = new HashMap<>();
+    for (Resource resource : resources) {
+      Resource delegate = repository.getResource(((RepositoryPathResource) resource).path);
+      delegates.add(delegate);
+      paths.put(delegate, resource);
+    }
+    delegates.get(0).readAll(delegates, (r, in) -> consumer.consume(paths.get(r), in));
+  }
+
+  @Override
+  public Resource reference(String relativePath) {
+    String reference = FilenameUtils.getFullPath(path) + relativePath;
+    String normalized = FilenameUtils.normalizeNoEndSeparator(reference, true);
+    return new RepositoryPathResource(repository, normalized == null ? reference : normalized);
+  }
+
+  @Override
+  public String toString() {
+    return path;
+  }
+}
@@ -2,14 +2,33 @@ package org.cyclopsgroup.gitcon;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
-import org.apache.commons.lang.StringUtils;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.SystemUtils;
 import org.apache.commons.lang.Validate;
 
 public abstract class Resource {
+  /** Consumer of streams read from a group of resources */
+  public interface BatchStreamConsumer {
+    void consume(Resource resource, InputStream in) throws IOException;
+  }
+
   public interface CheckedStreamConsumer {
     void consume(InputStream in) throws IOException;
   }
@@ -22,6 +41,39 @@ public abstract class Resource {
       this.file = file;
     }
 
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof FileResource && ((FileResource) o).file.equals(file);
+    }
+
+    /** Version, size and modification time all come from one stat of file */
+    @Override
+    public ResourceMetadata getMetadata() throws IOException {
+      BasicFileAttributes attributes;
+      try {
+        attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+      } catch (NoSuchFileException e) {
+        throw new FileNotFoundException("File " + file + " doesn't exist.");
+      }
+      if (!attributes.isRegularFile()) {
+        throw new FileNotFoundException("File " + file + " is not a file.");
+      }
+      long lastModified = attributes.lastModifiedTime().toMillis();
+      return new ResourceMetadata(
+          lastModified + "-" + attributes.size(), attributes.size(), lastModified);
+    }
+
+    @Override
+    public String getVersion() {
+      // A missing file has no version, and lastModified() and length() return 0 for it
+      return file.isFile() ? file.lastModified() + "-" + file.length() : null;
+    }
+
+    @Override
+    public int hashCode() {
+      return file.hashCode();
+    }
+
     @Override
     public void read(CheckedStreamConsumer consumer) throws IOException {
       try (InputStream in = new FileInputStream(file)) {
@@ -29,13 +81,28 @@ public abstract class Resource {
       }
     }
 
+    @Override
+    public ByteBuffer readAsByteBuffer() throws IOException {
+      return map(file);
+    }
+
     @Override
     public Resource reference(String relativePath) {
       String parentPath = file.getParentFile().getAbsolutePath();
       if (!parentPath.endsWith(SystemUtils.FILE_SEPARATOR)) {
         parentPath += SystemUtils.FILE_SEPARATOR;
       }
-      return new FileResource(new File(parentPath + relativePath));
+      // Normalized so that a file referenced from different directories is the same resource
+      String path = FilenameUtils.normalize(parentPath + relativePath);
+      return new FileResource(new File(path == null ? parentPath + relativePath : path));
+    }
+
+    @Override
+    public long size() throws IOException {
+      if (!file.isFile()) {
+        throw new FileNotFoundException("File " + file + " doesn't exist.");
+      }
+      return file.length();
     }
 
     @Override
@@ -48,26 +115,190 @@ public abstract class Resource {
     return new FileResource(file);
   }
 
+  /**
+   * Map a file into memory. The mapping stays valid after the file is deleted or replaced, and
+   * its memory is released when the buffer is garbage collected.
+   *
+   * @param file File to map
+   * @return Read-only buffer of the content of file
+   * @throws IOException If file doesn't exist, or is larger than a buffer can hold
+   */
+  protected static ByteBuffer map(File file) throws IOException {
+    if (!file.isFile()) {
+      throw new FileNotFoundException("File " + file + " doesn't exist.");
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("File " + file + " of " + channel.size() + " bytes is too large.");
+      }
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  /**
+   * Metadata of resource, which implementations tell without reading content. The default
+   * implementation combines {@link #getVersion()} and {@link #size()}, and doesn't know the
+   * modification time.
+   *
+   * @return Metadata of resource
+   * @throws IOException If resource doesn't exist or its metadata can't be determined
+   */
+  public ResourceMetadata getMetadata() throws IOException {
+    return new ResourceMetadata(getVersion(), size(), ResourceMetadata.UNKNOWN);
+  }
+
+  /**
+   * Version of content, which changes whenever content changes. It's used to tell if anything
+   * derived from content is still current without reading it. The default implementation doesn't
+   * know the version.
+   *
+   * @return Version of content, or NULL if it's unknown
+   * @throws IOException If version can't be determined
+   */
+  public String getVersion() throws IOException {
+    return null;
+  }
+
   public abstract void read(CheckedStreamConsumer consumer) throws IOException;
 
-  public Properties readAsProperties() throws IOException {
-    Properties source = new Properties();
-    read(source::load);
-    String includeProperty = source.getProperty("include", null);
-    source.remove("include");
-    if (StringUtils.isBlank(includeProperty)) {
-      return source;
+  /**
+   * Read the whole content as a buffer. A file on local disk is mapped into memory, and content
+   * held in memory by repository is shared rather than copied, so that large files don't have to
+   * be copied onto heap. The default implementation reads content into a new array.
+   *
+   * @return Read-only buffer of content, which is positioned at the beginning
+   * @throws IOException If content can't be read
+   */
+  public ByteBuffer readAsByteBuffer() throws IOException {
+    AtomicReference<byte[]> content = new AtomicReference<>();
+    read(in -> content.set(IOUtils.toByteArray(in)));
+    return ByteBuffer.wrap(content.get()).asReadOnlyBuffer();
+  }
+
+  /**
+   * Read content only if its version is different from a version caller already has, which costs
+   * the same as {@link #getVersion()} when content is not changed. A resource whose version is
+   * unknown is always read.
+   *
+   * @param knownVersion Version caller read before, or NULL to read anyway
+   * @param consumer Consumer of content, which is not called if content is not changed
+   * @return True if content is read
+   * @throws IOException If version or content can't be read
+   */
+  public boolean readIfChanged(String knownVersion, CheckedStreamConsumer consumer)
+      throws IOException {
+    if (knownVersion != null && knownVersion.equals(getVersion())) {
+      return false;
+    }
+    read(consumer);
+    return true;
+  }
+
+  /**
+   * Read a group of resources. The default implementation reads them one after another, while an
+   * implementation backed by a remote service may override it to fetch all of them in one round
+   * trip.
+   *
+   * @param resources Resources to read, typically references of this resource
+   * @param consumer Consumer that is called once for each resource
+   * @throws IOException If any of the resources can't be read
+   */
+  protected void readAll(List<Resource> resources, BatchStreamConsumer consumer)
+      throws IOException {
+    for (Resource resource : resources) {
+      resource.read(in -> consumer.consume(resource, in));
     }
+  }
 
-    String[] includes = StringUtils.split(includeProperty, ',');
-    Properties result = new Properties();
-    for (String include : includes) {
-      Properties props = reference(include).readAsProperties();
-      result.putAll(props);
+  /**
+   * Read a group of resources asynchronously. The default implementation reads each resource in a
+   * separate task, so the consumer may be called concurrently. An implementation that fetches a
+   * group of resources in one round trip may override it to run one batch instead.
+   *
+   * @param resources Resources to read, typically references of this resource
+   * @param consumer Consumer that is called once for each resource, possibly concurrently
+   * @param executor Executor to run reads
+   * @return Future that completes when all resources are consumed, or fails with the first failure
+   */
+  protected CompletableFuture<Void> readAllAsync(
+      List<Resource> resources, BatchStreamConsumer consumer, Executor executor) {
+    List<CompletableFuture<Void>> reads = new ArrayList<>();
+    for (Resource resource : resources) {
+      reads.add(
+          ResourceExecutors.runAsync(
+              () -> resource.read(in -> consumer.consume(resource, in)), executor));
     }
-    result.putAll(source);
-    return result;
+    return CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0]));
+  }
+
+  /**
+   * Read this resource as properties file merged with the files it includes. Each included file is
+   * read once, and includes that form a cycle fail the call.
+   *
+   * @return Merged properties
+   * @throws IOException If any of the files can't be read, or includes form a cycle
+   * @see PropertiesLoader
+   */
+  public Properties readAsProperties() throws IOException {
+    return new PropertiesLoader().load(this);
+  }
+
+  /**
+   * Read this resource as properties asynchronously in the {@link ResourceExecutors#getDefault()
+   * default executor}
+   *
+   * @return Future of merged properties
+   * @see #readAsPropertiesAsync(Executor)
+   */
+  public CompletableFuture<Properties> readAsPropertiesAsync() {
+    return readAsPropertiesAsync(ResourceExecutors.getDefault());
+  }
+
+  /**
+   * Read this resource as properties asynchronously. Files included by the same file are read in
+   * parallel, so that loading takes about one read per level of includes.
+   *
+   * @param executor Executor to run reads
+   * @return Future of merged properties, which fails if {@link #readAsProperties()} would fail
+   * @see PropertiesLoader#loadAsync(Resource, Executor)
+   */
+  public CompletableFuture<Properties> readAsPropertiesAsync(Executor executor) {
+    return new PropertiesLoader().loadAsync(this, executor);
+  }
+
+  /**
+   * Read content asynchronously in the {@link ResourceExecutors#getDefault() default executor}
+   *
+   * @param consumer Consumer of content, which is called in a thread of executor
+   * @return Future that completes when content is consumed
+   */
+  public CompletableFuture<Void> readAsync(CheckedStreamConsumer consumer) {
+    return readAsync(consumer, ResourceExecutors.getDefault());
+  }
+
+  /**
+   * Read content asynchronously
+   *
+   * @param consumer Consumer of content, which is called in a thread of executor
+   * @param executor Executor to run read
+   * @return Future that completes when content is consumed, or fails if read fails
+   */
+  public CompletableFuture<Void> readAsync(CheckedStreamConsumer consumer, Executor executor) {
+    return ResourceExecutors.runAsync(() -> read(consumer), executor);
   }
 
   public abstract Resource reference(String relativePath);
+
+  /**
+   * Size of content in bytes. Implementations tell it from metadata without reading content,
+   * while the default implementation reads content to count the bytes.
+   *
+   * @return Size of content in bytes
+   * @throws IOException If resource doesn't exist or its size can't be determined
+   */
+  public long size() throws IOException {
+    AtomicLong size = new AtomicLong();
+    read(in -> size.set(IOUtils.skip(in, Long.MAX_VALUE)));
+    return size.get();
+  }
 }
@@ -0,0 +1,86 @@
+package org.cyclopsgroup.gitcon;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/** Executors of asynchronous reads of resources */
+public final class ResourceExecutors {
+  /** Holder that creates the default executor when it's used for the first time */
+  private static class DefaultExecutorHolder {
+    private static final ExecutorService EXECUTOR = createDefaultExecutor();
+  }
+
+  /** A task that does I/O */
+  @FunctionalInterface
+  public interface IOTask {
+    void run() throws IOException;
+  }
+
+  private static final Log LOG = LogFactory.getLog(ResourceExecutors.class);
+
+  private static ExecutorService createDefaultExecutor() {
+    try {
+      // Virtual threads exist since Java 21, and the library is compiled for Java 8
+      ExecutorService executor =
+          (ExecutorService)
+              Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      LOG.info("Resources are read asynchronously in virtual threads.");
+      return executor;
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      AtomicInteger sequence = new AtomicInteger();
+      return Executors.newCachedThreadPool(
+          runnable -> {
+            Thread thread = new Thread(runnable, "gitcon-async-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          });
+    }
+  }
+
+  /**
+   * The default executor runs each task in a virtual thread if JVM supports it, or in a cached pool
+   * of daemon threads otherwise. Since reads mostly wait for disk or network, the number of
+   * threads is not bounded.
+   *
+   * @return The default executor shared by all asynchronous reads
+   */
+  public static Executor getDefault() {
+    return DefaultExecutorHolder.EXECUTOR;
+  }
+
+  /**
+   * Run a task that may fail with {@link IOException}. Unlike {@link
+   * CompletableFuture#runAsync(Runnable, Executor)}, the future fails with the exception of task
+   * itself rather than a wrapper of it.
+   *
+   * @param task Task to run
+   * @param executor Executor to run task
+   * @return Future that completes when task is done
+   */
+  public static CompletableFuture<Void> runAsync(IOTask task, Executor executor) {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    try {
+      executor.execute(
+          () -> {
+            try {
+              task.run();
+              future.complete(null);
+            } catch (IOException | RuntimeException e) {
+              future.completeExceptionally(e);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  private ResourceExecutors() {}
+}
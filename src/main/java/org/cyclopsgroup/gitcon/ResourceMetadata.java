@@ -0,0 +1,53 @@
+package org.cyclopsgroup.gitcon;
+
+/** Version, size and modification time of a resource, which are known without reading content */
+public final class ResourceMetadata {
+  /** Value of size or modification time that is unknown */
+  public static final long UNKNOWN = -1;
+
+  private final long lastModified;
+
+  private final long size;
+
+  private final String version;
+
+  /**
+   * @param version Version of content, or NULL if it's unknown
+   * @param size Size of content in bytes, or {@link #UNKNOWN}
+   * @param lastModified Modification time in milliseconds since epoch, or {@link #UNKNOWN}
+   */
+  public ResourceMetadata(String version, long size, long lastModified) {
+    this.version = version;
+    this.size = size;
+    this.lastModified = lastModified;
+  }
+
+  /** @return Modification time in milliseconds since epoch, or {@link #UNKNOWN} */
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  /** @return Size of content in bytes, or {@link #UNKNOWN} */
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * @return Version of content, or NULL if it's unknown
+   * @see Resource#getVersion()
+   */
+  public String getVersion() {
+    return version;
+  }
+
+  @Override
+  public String toString() {
+    return "ResourceMetadata[version="
+        + version
+        + ", size="
+        + size
+        + ", lastModified="
+        + lastModified
+        + "]";
+  }
+}
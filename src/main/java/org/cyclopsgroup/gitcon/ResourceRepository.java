@@ -1,5 +1,8 @@
 package org.cyclopsgroup.gitcon;
 
+import java.io.Closeable;
+import java.io.IOException;
+
 /** Interface that expose files for given file path */
 public interface ResourceRepository {
   /**
@@ -10,4 +13,21 @@ public interface ResourceRepository {
    *     call does not fail.
    */
   Resource getResource(String filePath);
+
+  /**
+   * Watch changes of a file, or files under a directory. Listener is called asynchronously from a
+   * thread of repository, and changes that happen within a short period are coalesced into one
+   * event, so that one push of files doesn't cause a storm of reloads.
+   *
+   * @param pathOrPrefix Path of file or directory relative to the root of repository, or empty for
+   *     the whole repository
+   * @param listener Listener of changes
+   * @return Handle that stops watching when it's closed
+   * @throws IOException If changes can't be watched
+   * @throws UnsupportedOperationException If the repository doesn't detect changes
+   */
+  default Closeable watch(String pathOrPrefix, ChangeListener listener) throws IOException {
+    throw new UnsupportedOperationException(
+        "Repository " + getClass().getName() + " doesn't support watching changes.");
+  }
 }
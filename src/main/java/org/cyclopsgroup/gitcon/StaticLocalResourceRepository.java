@@ -8,6 +8,7 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.apache.commons.lang.RandomStringUtils;
 import org.apache.commons.lang.SystemUtils;
+import org.apache.commons.lang.Validate;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -39,6 +40,10 @@ public class StaticLocalResourceRepository implements Closeable, LocalResourceRe
 
   private final File workingDirectory;
 
+  private final boolean workingDirectoryTemporary;
+
+  private boolean workspacePersistent;
+
   /**
    * Constructor with given working directory and file source and a given working directory. Working
    * directory will be wiped out in {@link #close()}
@@ -48,8 +53,14 @@ public class StaticLocalResourceRepository implements Closeable, LocalResourceRe
    * @see #StaticLocalResourceRepository(FileSystemSource)
    */
   public StaticLocalResourceRepository(File directory, FileSystemSource source) {
+    this(directory, source, false);
+  }
+
+  private StaticLocalResourceRepository(
+      File directory, FileSystemSource source, boolean directoryTemporary) {
     this.workingDirectory = directory;
     this.source = source;
+    this.workingDirectoryTemporary = directoryTemporary;
   }
 
   /**
@@ -60,12 +71,14 @@ public class StaticLocalResourceRepository implements Closeable, LocalResourceRe
    * @param source A source that gets files
    */
   public StaticLocalResourceRepository(FileSystemSource source) {
-    this(createTempDirectory(), source);
+    this(createTempDirectory(), source, true);
   }
 
   @Override
   public void close() throws IOException {
-    wipeWorkingDir();
+    if (!workspacePersistent) {
+      wipeWorkingDir();
+    }
   }
 
   @Override
@@ -96,7 +109,9 @@ public class StaticLocalResourceRepository implements Closeable, LocalResourceRe
    * @throws Exception Allows any type of exception
    */
   public void init() throws Exception {
-    wipeWorkingDir();
+    if (!workspacePersistent) {
+      wipeWorkingDir();
+    }
     if (workingDirectory.mkdirs()) {
       LOG.info("Made local temporary directory " + workingDirectory);
     }
@@ -109,6 +124,27 @@ public class StaticLocalResourceRepository implements Closeable, LocalResourceRe
     }
   }
 
+  /** @return True if working directory is kept across restarts */
+  public boolean isWorkspacePersistent() {
+    return workspacePersistent;
+  }
+
+  /**
+   * In persistent workspace mode, working directory is neither wiped out in {@link #init()} nor in
+   * {@link #close()}, so that file source may validate and update what the previous run left
+   * instead of getting everything again. It requires a working directory given to constructor, as
+   * a temporary one has a random name and would be left behind by each run.
+   *
+   * @param workspacePersistent True to keep working directory across restarts
+   */
+  public void setWorkspacePersistent(boolean workspacePersistent) {
+    Validate.isTrue(
+        !workspacePersistent || !workingDirectoryTemporary,
+        "Persistent workspace requires a given working directory instead of temporary "
+            + workingDirectory);
+    this.workspacePersistent = workspacePersistent;
+  }
+
   private void wipeWorkingDir() throws IOException {
     if (workingDirectory.isDirectory()) {
       LOG.info("Clean up local directory " + workingDirectory);
@@ -0,0 +1,283 @@
+package org.cyclopsgroup.gitcon;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A scheduler of updates that can be shared by many repositories. Updates run in a bounded pool of
+ * worker threads in the order they become due, each repository has at most one update waiting at
+ * any time, and the number of updates running against the same remote host is capped. Delays are
+ * randomly spread so that repositories registered at the same time don't update in bursts.
+ *
+ * <p>Updates that are due but not started yet make up the queue, whose depth and lag are exposed
+ * for monitoring.
+ */
+public class UpdateScheduler implements Closeable {
+  /** Updates of one remote host */
+  private static class Host {
+    private int running;
+    private final Queue<Registration> waiting = new ArrayDeque<>();
+  }
+
+  /** Update of a repository registered to scheduler */
+  public final class Registration {
+    private boolean cancelled;
+    private long dueNanos;
+    private final String host;
+    private final String name;
+    private boolean queued;
+    private boolean rerun;
+    private boolean running;
+    private final Runnable task;
+    private ScheduledFuture<?> timer;
+
+    private Registration(String name, String host, Runnable task) {
+      this.name = name;
+      this.host = host;
+      this.task = task;
+    }
+
+    /**
+     * Run update after given delay, which replaces the pending delay. If update is already due and
+     * waiting for a worker, the call has no effect. If update is running, it runs again after the
+     * delay.
+     *
+     * @param delay Delay before update
+     * @param unit Unit of delay
+     * @return False if update is already waiting or registration is cancelled
+     */
+    public boolean schedule(long delay, TimeUnit unit) {
+      synchronized (UpdateScheduler.this) {
+        if (cancelled || closed || queued) {
+          return false;
+        }
+        if (timer != null) {
+          timer.cancel(false);
+        }
+        long delayMillis = spread(unit.toMillis(delay));
+        timer = timerExecutor.schedule(() -> onDue(this), delayMillis, TimeUnit.MILLISECONDS);
+        return true;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return name + "@" + host;
+    }
+
+    /** Remove repository from scheduler. An update that is running is not interrupted. */
+    public void unregister() {
+      synchronized (UpdateScheduler.this) {
+        if (cancelled) {
+          return;
+        }
+        cancelled = true;
+        if (timer != null) {
+          timer.cancel(false);
+        }
+        if (queued) {
+          queued = false;
+          queuedRegistrations.remove(this);
+          hosts.get(host).waiting.remove(this);
+        }
+        registrations--;
+      }
+    }
+  }
+
+  private static final double DEFAULT_SPREAD_RATIO = 0.1;
+
+  private static final Log LOG = LogFactory.getLog(UpdateScheduler.class);
+
+  private static ThreadFactory createThreadFactory(String prefix) {
+    AtomicInteger sequence = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, prefix + sequence.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  private boolean closed;
+
+  private final Map<String, Host> hosts = new HashMap<>();
+
+  private final int maxUpdatesPerHost;
+
+  /** Registrations that are due but not started, in the order they became due */
+  private final Set<Registration> queuedRegistrations = new LinkedHashSet<>();
+
+  private final Random random = new Random();
+
+  private int registrations;
+
+  private volatile double spreadRatio = DEFAULT_SPREAD_RATIO;
+
+  private final ScheduledThreadPoolExecutor timerExecutor;
+
+  private final ThreadPoolExecutor workers;
+
+  /**
+   * @param workerThreads Maximum number of updates running at the same time
+   * @param maxUpdatesPerHost Maximum number of updates running against the same remote host
+   */
+  public UpdateScheduler(int workerThreads, int maxUpdatesPerHost) {
+    Validate.isTrue(workerThreads > 0, "Invalid number of worker threads " + workerThreads);
+    Validate.isTrue(maxUpdatesPerHost > 0, "Invalid updates per host " + maxUpdatesPerHost);
+    this.maxUpdatesPerHost = maxUpdatesPerHost;
+    this.timerExecutor = new ScheduledThreadPoolExecutor(1, createThreadFactory("gitcon-timer-"));
+    this.timerExecutor.setRemoveOnCancelPolicy(true);
+    this.workers =
+        new ThreadPoolExecutor(
+            workerThreads,
+            workerThreads,
+            60,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            createThreadFactory("gitcon-update-"));
+    this.workers.allowCoreThreadTimeOut(true);
+  }
+
+  @Override
+  public void close() {
+    synchronized (this) {
+      closed = true;
+    }
+    timerExecutor.shutdownNow();
+    workers.shutdownNow();
+  }
+
+  /** Must be called with lock */
+  private void dispatch(Host host) {
+    while (!closed && host.running < maxUpdatesPerHost && !host.waiting.isEmpty()) {
+      Registration registration = host.waiting.poll();
+      host.running++;
+      workers.execute(() -> run(registration, host));
+    }
+  }
+
+  /** @return Number of updates that are due but not started */
+  public synchronized int getQueueDepth() {
+    return queuedRegistrations.size();
+  }
+
+  /** @return Milliseconds the longest waiting update has been waiting since it was due */
+  public synchronized long getQueueLagMillis() {
+    if (queuedRegistrations.isEmpty()) {
+      return 0;
+    }
+    long dueNanos = queuedRegistrations.iterator().next().dueNanos;
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - dueNanos);
+  }
+
+  /** @return Number of repositories registered */
+  public synchronized int getRegistrationCount() {
+    return registrations;
+  }
+
+  /** @return Number of updates running */
+  public int getRunningCount() {
+    return workers.getActiveCount();
+  }
+
+  private synchronized void onDue(Registration registration) {
+    registration.timer = null;
+    if (registration.cancelled || closed) {
+      return;
+    }
+    if (registration.running) {
+      registration.rerun = true;
+      return;
+    }
+    queue(registration);
+  }
+
+  /** Must be called with lock */
+  private void queue(Registration registration) {
+    registration.queued = true;
+    registration.dueNanos = System.nanoTime();
+    queuedRegistrations.add(registration);
+    Host host = hosts.computeIfAbsent(registration.host, h -> new Host());
+    host.waiting.add(registration);
+    dispatch(host);
+  }
+
+  /**
+   * Register a repository to scheduler. Nothing runs until {@link Registration#schedule(long,
+   * TimeUnit)} is called.
+   *
+   * @param name Name of repository for logging
+   * @param host Remote host repository updates from, or NULL if it's unknown
+   * @param task The update task
+   * @return Registration to schedule updates with
+   */
+  public synchronized Registration register(String name, String host, Runnable task) {
+    Validate.notNull(task, "Task can't be NULL.");
+    Validate.isTrue(!closed, "Scheduler is closed.");
+    registrations++;
+    return new Registration(name, StringUtils.defaultString(host), task);
+  }
+
+  private void run(Registration registration, Host host) {
+    synchronized (this) {
+      registration.queued = false;
+      queuedRegistrations.remove(registration);
+      registration.running = !registration.cancelled;
+    }
+    try {
+      if (registration.running) {
+        registration.task.run();
+      }
+    } catch (RuntimeException e) {
+      LOG.error("Update of " + registration + " failed: " + e.getMessage(), e);
+    } finally {
+      synchronized (this) {
+        registration.running = false;
+        host.running--;
+        if (registration.rerun && !registration.cancelled) {
+          registration.rerun = false;
+          queue(registration);
+        }
+        dispatch(host);
+      }
+    }
+  }
+
+  /**
+   * Delays are randomly adjusted by up to the given ratio in both directions, so that updates
+   * scheduled at the same time start at different times. The default ratio is {@value
+   * #DEFAULT_SPREAD_RATIO}.
+   *
+   * @param spreadRatio Ratio between 0 and 1
+   */
+  public void setSpreadRatio(double spreadRatio) {
+    Validate.isTrue(spreadRatio >= 0 && spreadRatio <= 1, "Invalid spread ratio " + spreadRatio);
+    this.spreadRatio = spreadRatio;
+  }
+
+  /** Must be called with lock */
+  private long spread(long delayMillis) {
+    long range = (long) (delayMillis * spreadRatio);
+    if (range <= 0) {
+      return delayMillis;
+    }
+    return delayMillis - range + (long) (random.nextDouble() * range * 2);
+  }
+}
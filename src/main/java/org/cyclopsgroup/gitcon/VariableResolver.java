@@ -0,0 +1,56 @@
+package org.cyclopsgroup.gitcon;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang.Validate;
+
+/**
+ * Source of variables referred by {@link ExpressionTemplate}. A resolver is consulted for each
+ * variable when it's needed, so that resolvers backed by system properties or maps see their
+ * latest values without being copied.
+ */
+@FunctionalInterface
+public interface VariableResolver {
+  /** Resolver that defines no variable */
+  VariableResolver NONE = name -> null;
+
+  /** Resolver of system properties, which override environment variables of the same name */
+  VariableResolver SYSTEM = chain(System::getProperty, System::getenv);
+
+  /**
+   * @param resolvers Resolvers to consult in order
+   * @return Resolver that returns the first value any of given resolvers defines
+   */
+  static VariableResolver chain(VariableResolver... resolvers) {
+    Validate.noNullElements(resolvers, "Resolvers can't be NULL.");
+    List<VariableResolver> list = Arrays.asList(resolvers.clone());
+    return name -> {
+      for (VariableResolver resolver : list) {
+        String value = resolver.resolve(name);
+        if (value != null) {
+          return value;
+        }
+      }
+      return null;
+    };
+  }
+
+  /**
+   * @param map Map of variables, such as {@link java.util.Properties}, which is read but not copied
+   * @return Resolver backed by the map
+   */
+  static VariableResolver of(Map<?, ?> map) {
+    Validate.notNull(map, "Map can't be NULL.");
+    return name -> {
+      Object value = map.get(name);
+      return value == null ? null : value.toString();
+    };
+  }
+
+  /**
+   * @param name Name of variable
+   * @return Value of variable, or NULL if it's not defined
+   */
+  String resolve(String name);
+}
@@ -0,0 +1,239 @@
+package org.cyclopsgroup.gitcon.github;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Local directory that keeps blobs read from one Github repository, so that they can be served
+ * when Github is not reachable. Blobs are stored by object ID, and for each branch an index maps
+ * file paths to object IDs. Every file is written and synced to a temporary file first and moved
+ * into place, so readers never see a partially written file, even after a crash.
+ *
+ * <p>Blobs that files no longer refer to pile up until {@link #prune(long)} finds blobs over the
+ * size limit, and deletes those that no index of any branch refers to.
+ */
+class DiskBlobCache {
+  /** Writer of the content of a file */
+  private interface ContentWriter {
+    void write(OutputStream out) throws IOException;
+  }
+
+  private static final String INDEX_SUFFIX = ".index";
+
+  /** Temporary files older than this are left by writers that didn't finish */
+  private static final long STALE_TEMP_FILE_MILLIS = 3600000L;
+
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private final File blobDirectory;
+  private final File directory;
+  private final Map<String, Map<String, String>> indexes = new HashMap<>();
+
+  DiskBlobCache(File directory) {
+    this.directory = directory;
+    this.blobDirectory = new File(directory, "blobs");
+  }
+
+  private static void writeAtomically(File file, ContentWriter writer) throws IOException {
+    File parent = file.getParentFile();
+    FileUtils.forceMkdir(parent);
+    File temp = File.createTempFile(file.getName() + "-", TEMP_SUFFIX, parent);
+    try {
+      try (FileOutputStream out = new FileOutputStream(temp)) {
+        writer.write(out);
+        out.flush();
+        // Otherwise a crash after the move may leave an empty or partial file in place
+        out.getFD().sync();
+      }
+      try {
+        Files.move(
+            temp.toPath(),
+            file.toPath(),
+            StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      FileUtils.deleteQuietly(temp);
+    }
+  }
+
+  /**
+   * @param blobId Object ID of blob
+   * @return The file of cached blob, or NULL if blob is not cached
+   */
+  File getBlobFile(String blobId) {
+    File blobFile = new File(blobDirectory, blobId);
+    return blobFile.isFile() ? blobFile : null;
+  }
+
+  private File getIndexFile(String branch) throws IOException {
+    return new File(
+        directory, URLEncoder.encode(branch, StandardCharsets.UTF_8.name()) + INDEX_SUFFIX);
+  }
+
+  private Map<String, String> getIndex(String branch) throws IOException {
+    Map<String, String> index = indexes.get(branch);
+    if (index != null) {
+      return index;
+    }
+    index = new HashMap<>();
+    File file = getIndexFile(branch);
+    if (file.isFile()) {
+      Properties props = new Properties();
+      try (InputStream in = Files.newInputStream(file.toPath())) {
+        props.load(in);
+      }
+      for (String path : props.stringPropertyNames()) {
+        index.put(path, props.getProperty(path));
+      }
+    }
+    indexes.put(branch, index);
+    return index;
+  }
+
+  /**
+   * Delete blobs that no index of any branch refers to, least recently written first, if total size
+   * of blobs exceeds given limit. Blobs that indexes refer to are kept regardless of the limit, as
+   * they are what's served when Github is not reachable.
+   *
+   * @param maxBytes Total size of blobs above which blobs are deleted
+   * @throws IOException If indexes can't be read
+   */
+  synchronized void prune(long maxBytes) throws IOException {
+    File[] blobFiles = blobDirectory.listFiles();
+    if (blobFiles == null) {
+      return;
+    }
+    long totalBytes = 0;
+    for (File blobFile : blobFiles) {
+      totalBytes += blobFile.length();
+    }
+    if (totalBytes <= maxBytes) {
+      return;
+    }
+    // Indexes of other branches may be written by other repositories sharing the directory
+    Set<String> referenced = new HashSet<>();
+    File[] indexFiles = directory.listFiles((dir, name) -> name.endsWith(INDEX_SUFFIX));
+    for (File indexFile : indexFiles == null ? new File[0] : indexFiles) {
+      Properties props = new Properties();
+      try (InputStream in = Files.newInputStream(indexFile.toPath())) {
+        props.load(in);
+      }
+      for (String path : props.stringPropertyNames()) {
+        referenced.add(props.getProperty(path));
+      }
+    }
+    Arrays.sort(blobFiles, Comparator.comparingLong(File::lastModified));
+    long now = System.currentTimeMillis();
+    for (File blobFile : blobFiles) {
+      if (totalBytes <= maxBytes) {
+        break;
+      }
+      boolean temp = blobFile.getName().endsWith(TEMP_SUFFIX);
+      if (temp
+          ? now - blobFile.lastModified() > STALE_TEMP_FILE_MILLIS
+          : !referenced.contains(blobFile.getName())) {
+        long length = blobFile.length();
+        if (blobFile.delete()) {
+          totalBytes -= length;
+        }
+      }
+    }
+  }
+
+  /**
+   * Read object IDs of given files in a branch
+   *
+   * @param branch Name of branch
+   * @param paths Paths of files
+   * @return Map from file path to object ID, or NULL if any of the files is not in index
+   * @throws IOException If index can't be read
+   */
+  synchronized Map<String, String> readIndex(String branch, Collection<String> paths)
+      throws IOException {
+    Map<String, String> index = getIndex(branch);
+    Map<String, String> result = new LinkedHashMap<>();
+    for (String path : paths) {
+      String blobId = index.get(path);
+      if (blobId == null) {
+        return null;
+      }
+      result.put(path, blobId);
+    }
+    return result;
+  }
+
+  /**
+   * Save a blob unless it's already saved
+   *
+   * @param blobId Object ID of blob
+   * @param content Content of blob
+   * @throws IOException If blob can't be written
+   */
+  void writeBlob(String blobId, byte[] content) throws IOException {
+    if (getBlobFile(blobId) == null) {
+      writeAtomically(new File(blobDirectory, blobId), out -> out.write(content));
+    }
+  }
+
+  /**
+   * Save a blob from a stream, which is copied to disk without being held in memory
+   *
+   * @param blobId Object ID of blob
+   * @param in Stream of the content of blob
+   * @throws IOException If blob can't be written
+   */
+  void writeBlob(String blobId, InputStream in) throws IOException {
+    writeAtomically(new File(blobDirectory, blobId), out -> IOUtils.copyLarge(in, out));
+  }
+
+  /**
+   * Save the object IDs of files in a branch
+   *
+   * @param branch Name of branch
+   * @param blobIds Map from file path to object ID of blob
+   * @return True if a file that was in index refers to another blob now
+   * @throws IOException If index can't be written
+   */
+  synchronized boolean writeIndex(String branch, Map<String, String> blobIds) throws IOException {
+    Map<String, String> index = getIndex(branch);
+    if (index.entrySet().containsAll(blobIds.entrySet())) {
+      return false;
+    }
+    Map<String, String> updated = new HashMap<>(index);
+    boolean replaced = false;
+    for (Map.Entry<String, String> entry : blobIds.entrySet()) {
+      String previous = updated.put(entry.getKey(), entry.getValue());
+      replaced = replaced || (previous != null && !previous.equals(entry.getValue()));
+    }
+    Properties props = new Properties();
+    props.putAll(updated);
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    props.store(content, "Object IDs of files in branch " + branch);
+    writeAtomically(getIndexFile(branch), content::writeTo);
+    indexes.put(branch, updated);
+    return replaced;
+  }
+}
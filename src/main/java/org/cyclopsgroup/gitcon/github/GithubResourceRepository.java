@@ -3,26 +3,90 @@ package org.cyclopsgroup.gitcon.github;
 import com.google.cloud.storage.Storage;
 import com.google.cloud.storage.StorageOptions;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.ReaderInputStream;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.SystemUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.cyclopsgroup.gitcon.ChangeDispatcher;
+import org.cyclopsgroup.gitcon.ChangeEvent;
+import org.cyclopsgroup.gitcon.ChangeListener;
 import org.cyclopsgroup.gitcon.Resource;
 import org.cyclopsgroup.gitcon.Resource.CheckedStreamConsumer;
+import org.cyclopsgroup.gitcon.ResourceExecutors;
+import org.cyclopsgroup.gitcon.ResourceMetadata;
 import org.cyclopsgroup.gitcon.ResourceRepository;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-/** Resource repository that read file from Github with GraphQL Github API V4. */
-public class GithubResourceRepository implements ResourceRepository {
+/**
+ * Resource repository that read file from Github with GraphQL Github API V4.
+ *
+ * <p>All reads share one pooled HTTP client that keeps connections to the API alive, accepts gzip
+ * responses and applies the configured timeouts. The client is created on first read, so the
+ * connection settings must be set before that, and it is released in {@link #close()}.
+ *
+ * <p>The branch is resolved to a commit at most once per {@link
+ * #setCommitRefreshIntervalSeconds(int) refresh interval}, and files are read from that commit.
+ * Contents of blobs are cached by their object ID in a cache bounded by total size, so files that
+ * didn't change across commits are served from memory. Optionally blobs are also saved in a {@link
+ * #setCacheDirectory(File) cache directory}, which keeps the application working when Github is
+ * not reachable.
+ *
+ * <p>Changes are watched by polling the branch at the refresh interval. Only when the branch moves
+ * to another commit, object IDs of all watched paths are resolved in one request and compared with
+ * the previous ones.
+ */
+public class GithubResourceRepository implements Closeable, ResourceRepository {
   private class ResourceImpl extends Resource {
     private final String blobPath;
 
@@ -31,12 +95,150 @@ public class GithubResourceRepository implements ResourceRepository {
     }
 
     @Override
-    public void read(CheckedStreamConsumer consumer) throws IOException {
+    public boolean equals(Object o) {
+      if (!(o instanceof ResourceImpl)) {
+        return false;
+      }
+      ResourceImpl that = (ResourceImpl) o;
+      return that.getRepository() == getRepository() && that.blobPath.equals(blobPath);
+    }
+
+    /**
+     * @return Blob in the current commit, which is resolved once per commit with its object ID and
+     *     size only, without text. As reads do, it comes from cache directory until the branch is
+     *     resolved, or when Github can't be reached.
+     */
+    private ObjectInfo getBlob() throws IOException {
+      if (commitSnapshot == null) {
+        ObjectInfo cached = readCachedBlob(blobPath);
+        if (cached != null) {
+          revalidateInBackground(Collections.singletonList(blobPath));
+          return cached;
+        }
+      }
+      CommitSnapshot snapshot;
       try {
-        post(consumer, blobPath);
-      } catch (JSONException e) {
-        throw new IOException("Can't handle JSON.", e);
+        snapshot = resolveCommit(Collections.singletonList(blobPath), null);
+      } catch (IOException e) {
+        ObjectInfo cached = readCachedBlob(blobPath);
+        if (cached == null) {
+          throw e;
+        }
+        LOG.warn("Resolving " + this + " failed, its blob is served from cache.", e);
+        return cached;
+      }
+      return snapshot.blobs.get(blobPath);
+    }
+
+    /** Modification time is unknown, as Github API tells it only by history of file */
+    @Override
+    public ResourceMetadata getMetadata() throws IOException {
+      ObjectInfo blob = getBlob();
+      if (blob == MISSING_BLOB) {
+        throw new FileNotFoundException("File " + this + " doesn't exist.");
+      }
+      return new ResourceMetadata(blob.id, blob.size, ResourceMetadata.UNKNOWN);
+    }
+
+    private GithubResourceRepository getRepository() {
+      return GithubResourceRepository.this;
+    }
+
+    /** @return Object ID of blob in the current commit */
+    @Override
+    public String getVersion() throws IOException {
+      ObjectInfo blob = getBlob();
+      return blob == MISSING_BLOB ? null : blob.id;
+    }
+
+    @Override
+    public int hashCode() {
+      return blobPath.hashCode();
+    }
+
+    @Override
+    public void read(CheckedStreamConsumer consumer) throws IOException {
+      readBlobs(
+          Collections.singletonList(blobPath),
+          (path, in) -> {
+            if (in == null) {
+              throw new FileNotFoundException("File " + this + " doesn't exist.");
+            }
+            consumer.consume(in);
+          });
+    }
+
+    @Override
+    protected void readAll(List<Resource> resources, BatchStreamConsumer consumer)
+        throws IOException {
+      Map<String, Resource> resourcesByPath = new LinkedHashMap<>();
+      for (Resource resource : resources) {
+        if (!(resource instanceof ResourceImpl)
+            || ((ResourceImpl) resource).getRepository() != getRepository()) {
+          super.readAll(resources, consumer);
+          return;
+        }
+        resourcesByPath.put(((ResourceImpl) resource).blobPath, resource);
+      }
+      if (resourcesByPath.size() < resources.size()) {
+        super.readAll(resources, consumer);
+        return;
+      }
+
+      readBlobs(
+          resourcesByPath.keySet(),
+          (path, in) -> {
+            Resource resource = resourcesByPath.get(path);
+            if (in == null) {
+              throw new FileNotFoundException("File " + resource + " doesn't exist.");
+            }
+            consumer.consume(resource, in);
+          });
+    }
+
+    /** Files of this repository are fetched in one round trip, as {@link #readAll} does */
+    @Override
+    protected CompletableFuture<Void> readAllAsync(
+        List<Resource> resources, BatchStreamConsumer consumer, Executor executor) {
+      return ResourceExecutors.runAsync(() -> readAll(resources, consumer), executor);
+    }
+
+    /**
+     * Small blobs share the array in memory cache, and large blobs are mapped from disk cache if
+     * it's enabled. A blob that is not resolved yet is read along with its object ID in one
+     * request, rather than resolved in a request of its own first.
+     */
+    @Override
+    public ByteBuffer readAsByteBuffer() throws IOException {
+      CommitSnapshot snapshot = commitSnapshot;
+      if (snapshot == null || !snapshot.blobs.containsKey(blobPath)) {
+        return super.readAsByteBuffer();
+      }
+      ObjectInfo blob = getBlob();
+      if (blob == MISSING_BLOB) {
+        throw new FileNotFoundException("File " + this + " doesn't exist.");
       }
+      if (!isLarge(blob)) {
+        byte[] content = getBlobCache().getIfPresent(blob.id);
+        if (content == null) {
+          // Reading it puts it into cache, unless cache is too small to hold it
+          read(in -> {});
+          content = getBlobCache().getIfPresent(blob.id);
+        }
+        if (content != null) {
+          return ByteBuffer.wrap(content).asReadOnlyBuffer();
+        }
+      } else if (diskCache != null) {
+        File file = diskCache.getBlobFile(blob.id);
+        if (file == null) {
+          read(in -> {});
+          file = diskCache.getBlobFile(blob.id);
+        }
+        if (file != null) {
+          return map(file);
+        }
+      }
+      return super.readAsByteBuffer();
     }
 
     @Override
@@ -51,10 +253,160 @@ public class GithubResourceRepository implements ResourceRepository {
       String fullPath = blobPath.substring(0, lastSlash + 1) + path;
       return new ResourceImpl(fullPath);
     }
+
+    /** Size comes with object ID of blob, without text */
+    @Override
+    public long size() throws IOException {
+      ObjectInfo blob = getBlob();
+      if (blob == MISSING_BLOB) {
+        throw new FileNotFoundException("File " + this + " doesn't exist.");
+      }
+      return blob.size;
+    }
+
+    @Override
+    public String toString() {
+      return "github.com:" + githubUser + "/" + repositoryName + "@" + branchName + ":" + blobPath;
+    }
   }
 
+  /** Consumer of the content of files, which is NULL for files that don't exist */
+  private interface BlobConsumer {
+    void consume(String path, InputStream in) throws IOException;
+  }
+
+  /**
+   * Texts of blobs that came with their object IDs. Small texts are kept in memory, and large ones
+   * are spooled into temporary files, unless they are saved into cache directory, until closed.
+   */
+  private static class BlobTexts implements Closeable {
+    private final Map<String, byte[]> contents = new HashMap<>();
+    private final Map<String, File> spooledFiles = new HashMap<>();
+
+    @Override
+    public void close() {
+      for (File file : spooledFiles.values()) {
+        FileUtils.deleteQuietly(file);
+      }
+      spooledFiles.clear();
+    }
+
+    private void spool(String blobId, InputStream in) throws IOException {
+      File file = File.createTempFile("gitcon-blob-", ".tmp");
+      spooledFiles.put(blobId, file);
+      FileUtils.copyInputStreamToFile(in, file);
+    }
+  }
+
+  /** Commit of branch and blobs in the commit that are known so far */
+  private static class CommitSnapshot {
+    private final ConcurrentMap<String, ObjectInfo> blobs = new ConcurrentHashMap<>();
+    private final String branchName;
+    private final String commitId;
+    private final long resolvedAt;
+
+    private CommitSnapshot(String branchName, String commitId, long resolvedAt) {
+      this.branchName = branchName;
+      this.commitId = commitId;
+      this.resolvedAt = resolvedAt;
+    }
+  }
+
+  /** Handler of one aliased field of repository in a GraphQL response */
+  private interface FieldHandler {
+    void handle(String alias, JsonStreamReader reader) throws IOException;
+  }
+
+  /** Object ID and size of a Git object */
+  private static class ObjectInfo {
+    private final String id;
+    private final long size;
+
+    private ObjectInfo(String id, long size) {
+      this.id = id;
+      this.size = size;
+    }
+  }
+
+  private static final long DEFAULT_BLOB_CACHE_MAX_BYTES = 16L * 1024 * 1024;
+
+  private static final long DEFAULT_CACHE_DIRECTORY_MAX_BYTES = 64L * 1024 * 1024;
+
+  private static final int DEFAULT_COMMIT_REFRESH_INTERVAL_SECONDS = 60;
+
+  private static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+
+  private static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+  private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 5;
+
+  private static final int DEFAULT_SOCKET_TIMEOUT_MILLIS = 30000;
+
+  private static final long DEFAULT_STREAMING_THRESHOLD_BYTES = 1024L * 1024;
+
+  /** GraphQL field of the object ID, size and text of a blob, with an alias and an expression */
+  private static final String BLOB_FIELD_FORMAT =
+      "%s:object(expression: %s) { ... on Blob { oid byteSize text } }";
+
+  /** GraphQL field of the object ID of a blob, with an alias and a quoted object expression */
+  private static final String BLOB_ID_FIELD_FORMAT =
+      "%s:object(expression: %s) { ... on Blob { oid byteSize } }";
+
+  /** GraphQL field of the text of a blob, with an alias and a quoted object ID */
+  private static final String BLOB_TEXT_FIELD_FORMAT =
+      "%s:object(oid: %s) { ... on Blob { text } }";
+
+  /** GraphQL field of the object ID of any object, with an alias and a quoted object expression */
+  private static final String OBJECT_ID_FIELD_FORMAT = "%s:object(expression: %s) { oid }";
+
+  /** GraphQL field of the object ID of a commit, with a quoted object expression */
+  private static final String COMMIT_FIELD_FORMAT = "commit:object(expression: %s) { oid }";
+
+  private static final String GRAPHQL_ENDPOINT = "https://api.github.com/graphql";
+
+  private static final int IDLE_CONNECTION_SECONDS = 60;
+
+  private static final Log LOG = LogFactory.getLog(GithubResourceRepository.class);
+
+  private static final long MIN_WATCH_INTERVAL_MILLIS = 1000;
+
+  /** Blob of files that don't exist, or that are not text blobs */
+  private static final ObjectInfo MISSING_BLOB = new ObjectInfo("", -1);
+
   private static final Pattern GCS_PATTERN = Pattern.compile("^gs://((\\w|-|\\.)+)/(.+)$");
 
+  private static void readData(JsonStreamReader reader, FieldHandler handler) throws IOException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (reader.nextName().equals("repository") && !reader.isNextNull()) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+          handler.handle(reader.nextName(), reader);
+        }
+        reader.endObject();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+  }
+
+  private static void readErrors(JsonStreamReader reader, List<String> errors) throws IOException {
+    reader.beginArray();
+    while (reader.hasNext()) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if (reader.nextName().equals("message") && !reader.isNextNull()) {
+          errors.add(reader.nextString());
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    }
+    reader.endArray();
+  }
+
   private static String readGcsIfApplicable(String string) {
     Matcher m = GCS_PATTERN.matcher(string);
     if (!m.matches()) {
@@ -69,11 +421,85 @@ public class GithubResourceRepository implements ResourceRepository {
     return new String(storage.readAllBytes(bucketName, objectKey), StandardCharsets.UTF_8);
   }
 
+  private static ObjectInfo readObjectInfo(JsonStreamReader reader) throws IOException {
+    if (reader.isNextNull()) {
+      reader.nextNull();
+      return null;
+    }
+    String id = null;
+    long size = -1;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "oid":
+          id = reader.nextString();
+          break;
+        case "byteSize":
+          size = reader.nextLong();
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return id == null ? null : new ObjectInfo(id, size);
+  }
+
+  /**
+   * Read text of a blob object and pass it to consumer as a stream of UTF-8 bytes, which are
+   * decoded from the JSON response while the consumer reads.
+   *
+   * @return False if object is not a text blob, in which case consumer is not called
+   */
+  private static boolean readText(JsonStreamReader reader, CheckedStreamConsumer consumer)
+      throws IOException {
+    if (reader.isNextNull()) {
+      reader.nextNull();
+      return false;
+    }
+    boolean found = false;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (reader.nextName().equals("text") && !reader.isNextNull()) {
+        try (InputStream in =
+            new ReaderInputStream(reader.nextStringReader(), StandardCharsets.UTF_8)) {
+          consumer.consume(in);
+        }
+        found = true;
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return found;
+  }
+
   private final String accessToken;
+  private volatile Cache<String, byte[]> blobCache;
+  private long blobCacheMaxBytes = DEFAULT_BLOB_CACHE_MAX_BYTES;
   private final String bodyFormat;
-  private String branchName = "master";
+  private volatile String branchName = "master";
+  private File cacheDirectory;
+  private volatile long cacheDirectoryMaxBytes = DEFAULT_CACHE_DIRECTORY_MAX_BYTES;
+  private ChangeDispatcher changeDispatcher;
+  private volatile boolean closed;
+  private volatile long commitRefreshIntervalMillis =
+      TimeUnit.SECONDS.toMillis(DEFAULT_COMMIT_REFRESH_INTERVAL_SECONDS);
+  private volatile CommitSnapshot commitSnapshot;
+  private int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+  private DiskBlobCache diskCache;
   private final String githubUser;
+  private volatile CloseableHttpClient httpClient;
+  private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+  private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
   private final String repositoryName;
+  private final Set<String> revalidatingPaths = ConcurrentHashMap.newKeySet();
+  private ExecutorService revalidationExecutor;
+  private int socketTimeoutMillis = DEFAULT_SOCKET_TIMEOUT_MILLIS;
+  private volatile long streamingThresholdBytes = DEFAULT_STREAMING_THRESHOLD_BYTES;
+  private String watchedCommitId;
+  private Map<String, String> watchedObjectIds = Collections.emptyMap();
+  private ScheduledExecutorService watchExecutor;
 
   public GithubResourceRepository(String githubUser, String repositoryName, String accessToken)
       throws IOException {
@@ -81,17 +507,226 @@ public class GithubResourceRepository implements ResourceRepository {
     this.repositoryName = repositoryName;
     this.accessToken = readGcsIfApplicable(accessToken);
     this.bodyFormat =
-        IOUtils.toString(getClass().getResource("get_blob_content.gql"), StandardCharsets.UTF_8);
+        IOUtils.toString(getClass().getResource("query_repository.gql"), StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    closed = true;
+    if (revalidationExecutor != null) {
+      revalidationExecutor.shutdownNow();
+    }
+    if (watchExecutor != null) {
+      watchExecutor.shutdownNow();
+      changeDispatcher.close();
+    }
+    if (httpClient != null) {
+      httpClient.close();
+      httpClient = null;
+    }
+  }
+
+  /** Compare object IDs of watched paths if branch moved, which runs in the watch thread */
+  private void checkWatchedPaths() {
+    List<String> paths = new ArrayList<>();
+    for (String path : changeDispatcher.getWatchedPaths()) {
+      path = StringUtils.removeEnd(path, "/");
+      if (!paths.contains(path)) {
+        paths.add(path);
+      }
+    }
+    if (paths.isEmpty()) {
+      return;
+    }
+    try {
+      CommitSnapshot snapshot = resolveCommit(Collections.<String>emptyList(), null);
+      if (snapshot.commitId.equals(watchedCommitId)
+          && watchedObjectIds.keySet().containsAll(paths)) {
+        return;
+      }
+      Map<String, String> objectIds = resolveObjectIds(snapshot.commitId, paths);
+      List<String> added = new ArrayList<>();
+      List<String> modified = new ArrayList<>();
+      List<String> deleted = new ArrayList<>();
+      for (String path : paths) {
+        // Paths that are watched for the first time only get their object IDs recorded
+        if (!watchedObjectIds.containsKey(path)) {
+          continue;
+        }
+        String oldId = watchedObjectIds.get(path);
+        String newId = objectIds.get(path);
+        if (oldId == null && newId != null) {
+          added.add(path);
+        } else if (oldId != null && newId == null) {
+          deleted.add(path);
+        } else if (oldId != null && !oldId.equals(newId)) {
+          modified.add(path);
+        }
+      }
+      String oldCommitId = watchedCommitId;
+      watchedCommitId = snapshot.commitId;
+      watchedObjectIds = objectIds;
+      if (!added.isEmpty() || !modified.isEmpty() || !deleted.isEmpty()) {
+        changeDispatcher.publish(
+            new ChangeEvent(oldCommitId, snapshot.commitId, added, modified, deleted));
+      }
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Checking changes of " + paths + " failed.", e);
+    }
+  }
+
+  private CloseableHttpClient createHttpClient() {
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(maxConnections);
+    connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+    connectionManager.setValidateAfterInactivity(1000);
+    RequestConfig requestConfig =
+        RequestConfig.custom()
+            .setConnectTimeout(connectTimeoutMillis)
+            .setConnectionRequestTimeout(connectTimeoutMillis)
+            .setSocketTimeout(socketTimeoutMillis)
+            .build();
+    // Content compression is enabled by the builder unless disabled explicitly
+    return HttpClients.custom()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(requestConfig)
+        .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+        .evictExpiredConnections()
+        .evictIdleConnections(IDLE_CONNECTION_SECONDS, TimeUnit.SECONDS)
+        .build();
+  }
+
+  private Map<String, byte[]> fetchBlobTexts(Collection<String> blobIds) throws IOException {
+    Map<String, String> aliases = new HashMap<>();
+    StringBuilder fields = new StringBuilder();
+    for (String blobId : blobIds) {
+      String alias = "blob" + aliases.size();
+      aliases.put(alias, blobId);
+      fields.append(String.format(BLOB_TEXT_FIELD_FORMAT, alias, JSONObject.quote(blobId)));
+    }
+    Map<String, byte[]> result = new HashMap<>();
+    post(
+        fields.toString(),
+        (alias, reader) ->
+            readText(reader, in -> result.put(aliases.get(alias), IOUtils.toByteArray(in))));
+    return result;
+  }
+
+  private void fetchBlobs(List<String> paths, BlobConsumer consumer) throws IOException {
+    try (BlobTexts texts = new BlobTexts()) {
+      fetchBlobs(paths, texts, consumer);
+    }
+  }
+
+  private void fetchBlobs(List<String> paths, BlobTexts texts, BlobConsumer consumer)
+      throws IOException {
+    CommitSnapshot snapshot = resolveCommit(paths, texts);
+
+    // Small blobs are read from memory or came with their object IDs, and the rest of them, whose
+    // paths had cached blobs before, are fetched in one request
+    Cache<String, byte[]> cache = getBlobCache();
+    Map<String, byte[]> contents = new HashMap<>();
+    Map<String, byte[]> fetched = new HashMap<>();
+    Set<String> missingIds = new LinkedHashSet<>();
+    Map<String, String> blobIds = new HashMap<>();
+    for (String path : paths) {
+      ObjectInfo blob = snapshot.blobs.get(path);
+      blobIds.put(path, blob.id);
+      if (blob == MISSING_BLOB || isLarge(blob)) {
+        continue;
+      }
+      byte[] content = cache.getIfPresent(blob.id);
+      if (content == null && texts.contents.containsKey(blob.id)) {
+        fetched.put(blob.id, texts.contents.get(blob.id));
+      } else if (content == null) {
+        missingIds.add(blob.id);
+      } else {
+        contents.put(blob.id, content);
+      }
+    }
+    if (!missingIds.isEmpty()) {
+      fetched.putAll(fetchBlobTexts(missingIds));
+    }
+    cache.putAll(fetched);
+    contents.putAll(fetched);
+    if (diskCache != null) {
+      try {
+        for (Map.Entry<String, byte[]> entry : fetched.entrySet()) {
+          diskCache.writeBlob(entry.getKey(), entry.getValue());
+        }
+        if (diskCache.writeIndex(snapshot.branchName, blobIds)) {
+          diskCache.prune(cacheDirectoryMaxBytes);
+        }
+      } catch (IOException e) {
+        LOG.warn("Can't write blobs into cache directory " + cacheDirectory, e);
+      }
+    }
+
+    for (String path : paths) {
+      ObjectInfo blob = snapshot.blobs.get(path);
+      if (blob == MISSING_BLOB) {
+        consumer.consume(path, null);
+      } else if (isLarge(blob)) {
+        readLargeBlob(path, blob, texts, consumer);
+      } else {
+        byte[] content = contents.get(blob.id);
+        consumer.consume(path, content == null ? null : new ByteArrayInputStream(content));
+      }
+    }
   }
 
   String getAccessToken() {
     return accessToken;
   }
 
+  private Cache<String, byte[]> getBlobCache() {
+    Cache<String, byte[]> cache = blobCache;
+    if (cache != null) {
+      return cache;
+    }
+    synchronized (this) {
+      if (blobCache == null) {
+        blobCache =
+            CacheBuilder.newBuilder()
+                .maximumWeight(blobCacheMaxBytes)
+                .<String, byte[]>weigher((id, content) -> content.length)
+                .recordStats()
+                .build();
+      }
+      return blobCache;
+    }
+  }
+
+  /**
+   * Statistics of blob cache, where each lookup of a blob that exists in the commit counts as
+   * either a hit or a miss.
+   *
+   * @return Snapshot of hit, miss and eviction counts of blob cache
+   */
+  public CacheStats getBlobCacheStats() {
+    return getBlobCache().stats();
+  }
+
   String getGithubUser() {
     return githubUser;
   }
 
+  private CloseableHttpClient getHttpClient() throws IOException {
+    CloseableHttpClient client = httpClient;
+    if (client != null) {
+      return client;
+    }
+    synchronized (this) {
+      if (closed) {
+        throw new IOException("Repository " + githubUser + "/" + repositoryName + " is closed.");
+      }
+      if (httpClient == null) {
+        httpClient = createHttpClient();
+      }
+      return httpClient;
+    }
+  }
+
   String getRepositoryName() {
     return repositoryName;
   }
@@ -104,37 +739,552 @@ public class GithubResourceRepository implements ResourceRepository {
     return new ResourceImpl(filePath);
   }
 
-  private void post(CheckedStreamConsumer consumer, String filePath)
-      throws IOException, JSONException {
+  private boolean isLarge(ObjectInfo blob) {
+    return blob.size > streamingThresholdBytes;
+  }
+
+  /**
+   * @param previous Blob that a path had in the previous commit, or NULL if it's unknown
+   * @return False if the blob is cached or large, and therefore likely doesn't need text
+   */
+  private boolean isTextNeeded(ObjectInfo previous) {
+    if (previous == null || previous == MISSING_BLOB) {
+      return true;
+    }
+    return !isLarge(previous)
+        && !getBlobCache().asMap().containsKey(previous.id)
+        && (diskCache == null || diskCache.getBlobFile(previous.id) == null);
+  }
+
+  /**
+   * Post a GraphQL query of repository fields, and pass each field in response to handler while
+   * response is being read.
+   */
+  private void post(String fields, FieldHandler handler) throws IOException {
     JSONObject data = new JSONObject();
-    data.put("query", String.format(bodyFormat, githubUser, repositoryName, branchName, filePath));
-    data.toString().replaceAll("\\s+", " ");
+    try {
+      data.put("query", String.format(bodyFormat, githubUser, repositoryName, fields));
+    } catch (JSONException e) {
+      throw new IOException("Can't handle JSON.", e);
+    }
 
-    HttpPost post = new HttpPost("https://api.github.com/graphql");
-    post.setEntity(new StringEntity(data.toString().replaceAll("\\s+", " ")));
+    HttpPost post = new HttpPost(GRAPHQL_ENDPOINT);
+    post.setEntity(
+        new StringEntity(data.toString().replaceAll("\\s+", " "), ContentType.APPLICATION_JSON));
     if (!accessToken.isEmpty()) {
       post.addHeader("Authorization", "bearer " + accessToken);
     }
 
-    String content;
-    try (CloseableHttpClient client = HttpClients.createDefault()) {
-      try (CloseableHttpResponse response = client.execute(post)) {
-        content = IOUtils.toString(response.getEntity().getContent(), StandardCharsets.UTF_8);
+    List<String> errors = new ArrayList<>();
+    try (CloseableHttpResponse response = getHttpClient().execute(post)) {
+      HttpEntity entity = response.getEntity();
+      if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+        throw new IOException(
+            "Github API returned "
+                + response.getStatusLine()
+                + ": "
+                + EntityUtils.toString(entity, StandardCharsets.UTF_8));
+      }
+      // Closing the fully read entity returns the connection to the pool
+      try (JsonStreamReader reader =
+          new JsonStreamReader(
+              new BufferedReader(
+                  new InputStreamReader(entity.getContent(), StandardCharsets.UTF_8)))) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+          String name = reader.nextName();
+          if (reader.isNextNull()) {
+            reader.nextNull();
+          } else if (name.equals("data")) {
+            readData(reader, handler);
+          } else if (name.equals("errors")) {
+            readErrors(reader, errors);
+          } else {
+            reader.skipValue();
+          }
+        }
+        reader.endObject();
+      }
+    }
+    if (!errors.isEmpty()) {
+      throw new IOException("Github API returned errors: " + errors);
+    }
+  }
+
+  /**
+   * Read object ID, size and text of a blob if text is in response. Text of a small blob is kept in
+   * memory, and text of a large blob is saved into disk cache if it's enabled, or spooled into a
+   * temporary file otherwise, so that it's never fetched twice.
+   *
+   * @param texts Texts where text of blob is put, or NULL if text is not asked for
+   * @return Object ID and size of blob, or NULL if object is not a blob
+   */
+  private ObjectInfo readBlob(JsonStreamReader reader, BlobTexts texts) throws IOException {
+    if (reader.isNextNull()) {
+      reader.nextNull();
+      return null;
+    }
+    String id = null;
+    long size = -1;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      // Fields come in the order of query, so text comes after object ID and size
+      boolean large = size > streamingThresholdBytes;
+      if (name.equals("oid")) {
+        id = reader.nextString();
+      } else if (name.equals("byteSize")) {
+        size = reader.nextLong();
+      } else if (name.equals("text") && id != null && texts != null && !reader.isNextNull()) {
+        try (InputStream in =
+            new ReaderInputStream(reader.nextStringReader(), StandardCharsets.UTF_8)) {
+          if (!large) {
+            texts.contents.put(id, IOUtils.toByteArray(in));
+          } else if (diskCache != null) {
+            diskCache.writeBlob(id, in);
+          } else {
+            texts.spool(id, in);
+          }
+        }
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return id == null ? null : new ObjectInfo(id, size);
+  }
+
+  private void readBlobs(Collection<String> filePaths, BlobConsumer consumer) throws IOException {
+    List<String> paths = new ArrayList<>();
+    for (String path : filePaths) {
+      path = StringUtils.removeStart(path, "/");
+      if (!paths.contains(path)) {
+        paths.add(path);
       }
     }
-    String document =
-        new JSONObject(content)
-            .getJSONObject("data")
-            .getJSONObject("repository")
-            .getJSONObject("content")
-            .getString("text");
-    try (InputStream in = new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8))) {
-      consumer.consume(in);
+    if (paths.isEmpty()) {
+      return;
+    }
+    if (diskCache == null) {
+      fetchBlobs(paths, consumer);
+      return;
+    }
+
+    // Until the branch is resolved for the first time, serve files from disk if possible
+    if (commitSnapshot == null && readCachedBlobs(paths, consumer)) {
+      revalidateInBackground(paths);
+      return;
+    }
+    AtomicBoolean consumed = new AtomicBoolean();
+    try {
+      fetchBlobs(
+          paths,
+          (path, in) -> {
+            consumed.set(true);
+            consumer.consume(path, in);
+          });
+    } catch (IOException e) {
+      if (consumed.get() || !readCachedBlobs(paths, consumer)) {
+        throw e;
+      }
+      LOG.warn("Reading from Github failed, files " + paths + " are served from cache.", e);
+    }
+  }
+
+  /** @return Blob of file in cache directory, or NULL if it's not cached */
+  private ObjectInfo readCachedBlob(String path) throws IOException {
+    if (diskCache == null) {
+      return null;
+    }
+    Map<String, String> blobIds = diskCache.readIndex(branchName, Collections.singletonList(path));
+    if (blobIds == null) {
+      return null;
+    }
+    String blobId = blobIds.get(path);
+    if (blobId.equals(MISSING_BLOB.id)) {
+      return MISSING_BLOB;
+    }
+    File file = diskCache.getBlobFile(blobId);
+    return file == null ? null : new ObjectInfo(blobId, file.length());
+  }
+
+  /** @return False if any of the files is not cached, in which case consumer is not called */
+  private boolean readCachedBlobs(List<String> paths, BlobConsumer consumer) throws IOException {
+    Map<String, String> blobIds = diskCache.readIndex(branchName, paths);
+    if (blobIds == null) {
+      return false;
+    }
+    Map<String, File> files = new HashMap<>();
+    for (String blobId : blobIds.values()) {
+      if (!blobId.equals(MISSING_BLOB.id)) {
+        File file = diskCache.getBlobFile(blobId);
+        if (file == null) {
+          return false;
+        }
+        files.put(blobId, file);
+      }
+    }
+    for (Map.Entry<String, String> entry : blobIds.entrySet()) {
+      File file = files.get(entry.getValue());
+      if (file == null) {
+        consumer.consume(entry.getKey(), null);
+        continue;
+      }
+      try (InputStream in = new FileInputStream(file)) {
+        consumer.consume(entry.getKey(), in);
+      }
     }
+    return true;
+  }
+
+  /**
+   * Read text of multiple files in one go. The branch, when it's due to be resolved again, and
+   * object IDs and texts of files that are new to the current commit are resolved in one GraphQL
+   * request, where each file is an aliased object field of the repository. Only blobs of files
+   * whose previous blobs were cached and have changed are fetched in another request.
+   *
+   * @param filePaths Paths of files relative to the root of repository
+   * @return Map from file path to its text, in the order of given paths. Files that don't exist in
+   *     the branch are absent from the map.
+   * @throws IOException If the request fails
+   */
+  public Map<String, String> readFiles(Collection<String> filePaths) throws IOException {
+    Map<String, String> result = new LinkedHashMap<>();
+    readBlobs(
+        filePaths,
+        (path, in) -> {
+          if (in != null) {
+            result.put(path, IOUtils.toString(in, StandardCharsets.UTF_8));
+          }
+        });
+    return result;
+  }
+
+  private void readLargeBlob(String path, ObjectInfo blob, BlobTexts texts, BlobConsumer consumer)
+      throws IOException {
+    File spooled = texts.spooledFiles.get(blob.id);
+    if (spooled != null) {
+      try (InputStream in = new FileInputStream(spooled)) {
+        consumer.consume(path, in);
+      }
+      return;
+    }
+    if (diskCache == null) {
+      if (!streamBlobText(blob.id, in -> consumer.consume(path, in))) {
+        consumer.consume(path, null);
+      }
+      return;
+    }
+    File file = diskCache.getBlobFile(blob.id);
+    if (file == null) {
+      streamBlobText(blob.id, in -> diskCache.writeBlob(blob.id, in));
+      file = diskCache.getBlobFile(blob.id);
+    }
+    if (file == null) {
+      consumer.consume(path, null);
+      return;
+    }
+    try (InputStream in = new FileInputStream(file)) {
+      consumer.consume(path, in);
+    }
+  }
+
+  /** @return Map from path to object ID, which is NULL if path doesn't exist */
+  private Map<String, String> resolveObjectIds(String commitId, List<String> paths)
+      throws IOException {
+    Map<String, String> aliases = new HashMap<>();
+    Map<String, String> result = new HashMap<>();
+    StringBuilder fields = new StringBuilder();
+    for (String path : paths) {
+      String alias = "object" + aliases.size();
+      aliases.put(alias, path);
+      result.put(path, null);
+      String expression = JSONObject.quote(commitId + ":" + path);
+      fields.append(String.format(OBJECT_ID_FIELD_FORMAT, alias, expression));
+    }
+    post(
+        fields.toString(),
+        (alias, reader) -> {
+          ObjectInfo object = readObjectInfo(reader);
+          if (object != null) {
+            result.put(aliases.get(alias), object.id);
+          }
+        });
+    return result;
+  }
+
+  /**
+   * Resolve the branch to a commit if it's not resolved within refresh interval, and the blobs of
+   * paths that are not known in the commit, in one request. When texts are wanted, text of a blob
+   * comes in the same request, unless the path had a blob that is cached or large, in which case
+   * only object ID is asked for.
+   *
+   * @param paths Paths of files whose blobs are needed
+   * @param texts Texts where texts that come with object IDs are put, or NULL if only object IDs
+   *     and sizes are wanted, such as for metadata
+   * @return Commit where blobs of all given paths are known
+   */
+  private CommitSnapshot resolveCommit(Collection<String> paths, BlobTexts texts)
+      throws IOException {
+    CommitSnapshot snapshot = commitSnapshot;
+    long now = System.currentTimeMillis();
+    boolean current = snapshot != null && now - snapshot.resolvedAt < commitRefreshIntervalMillis;
+    String branchName = this.branchName;
+    Map<String, String> aliases = new HashMap<>();
+    Map<String, ObjectInfo> blobs = new HashMap<>();
+    StringBuilder fields = new StringBuilder();
+    if (!current) {
+      fields.append(String.format(COMMIT_FIELD_FORMAT, JSONObject.quote(branchName)));
+    }
+    for (String path : paths) {
+      ObjectInfo previous = snapshot == null ? null : snapshot.blobs.get(path);
+      if (current && previous != null) {
+        continue;
+      }
+      String alias = "blob" + aliases.size();
+      aliases.put(alias, path);
+      blobs.put(path, MISSING_BLOB);
+      // Blobs of a branch that moves during the request are dropped at the next refresh
+      String expression =
+          JSONObject.quote((current ? snapshot.commitId : branchName) + ":" + path);
+      fields.append(
+          String.format(
+              texts != null && isTextNeeded(previous) ? BLOB_FIELD_FORMAT : BLOB_ID_FIELD_FORMAT,
+              alias,
+              expression));
+    }
+    if (current && aliases.isEmpty()) {
+      return snapshot;
+    }
+
+    AtomicReference<ObjectInfo> commit = new AtomicReference<>();
+    post(
+        fields.toString(),
+        (alias, reader) -> {
+          if (alias.equals("commit")) {
+            commit.set(readObjectInfo(reader));
+            return;
+          }
+          ObjectInfo blob = readBlob(reader, texts);
+          if (blob != null) {
+            blobs.put(aliases.get(alias), blob);
+          }
+        });
+    if (current) {
+      snapshot.blobs.putAll(blobs);
+      return snapshot;
+    }
+    if (commit.get() == null) {
+      throw new IOException(
+          "Branch " + branchName + " doesn't exist in " + githubUser + "/" + repositoryName);
+    }
+    String commitId = commit.get().id;
+    CommitSnapshot resolved = new CommitSnapshot(branchName, commitId, now);
+    if (snapshot != null && snapshot.commitId.equals(commitId)) {
+      // Blobs stay the same as long as the commit doesn't change
+      resolved.blobs.putAll(snapshot.blobs);
+    }
+    resolved.blobs.putAll(blobs);
+    commitSnapshot = resolved;
+    return resolved;
+  }
+
+  /** @return False if the object is not a text blob, in which case consumer is not called */
+  private boolean streamBlobText(String blobId, CheckedStreamConsumer consumer)
+      throws IOException {
+    AtomicBoolean found = new AtomicBoolean();
+    post(
+        String.format(BLOB_TEXT_FIELD_FORMAT, "blob", JSONObject.quote(blobId)),
+        (alias, reader) -> found.set(readText(reader, consumer)));
+    return found.get();
+  }
+
+  /** Paths that are already waiting for revalidation are not revalidated again */
+  private synchronized void revalidateInBackground(List<String> paths) {
+    List<String> newPaths = new ArrayList<>();
+    for (String path : paths) {
+      if (revalidatingPaths.add(path)) {
+        newPaths.add(path);
+      }
+    }
+    if (closed || newPaths.isEmpty()) {
+      return;
+    }
+    if (revalidationExecutor == null) {
+      revalidationExecutor =
+          Executors.newSingleThreadExecutor(
+              runnable -> {
+                Thread thread = new Thread(runnable, "gitcon-github-revalidation");
+                thread.setDaemon(true);
+                return thread;
+              });
+    }
+    revalidationExecutor.execute(
+        () -> {
+          try {
+            fetchBlobs(newPaths, (path, in) -> {});
+          } catch (IOException e) {
+            LOG.warn("Revalidation of cached files " + newPaths + " failed.", e);
+          } finally {
+            revalidatingPaths.removeAll(newPaths);
+          }
+        });
+  }
+
+  /**
+   * The default maximum total size of cached blobs is {@value #DEFAULT_BLOB_CACHE_MAX_BYTES} bytes.
+   * It takes effect only before the first read.
+   *
+   * @param blobCacheMaxBytes Maximum total size of blobs cached in memory
+   */
+  public void setBlobCacheMaxBytes(long blobCacheMaxBytes) {
+    Preconditions.checkArgument(
+        blobCacheMaxBytes >= 0, "Invalid cache size %s.", blobCacheMaxBytes);
+    this.blobCacheMaxBytes = blobCacheMaxBytes;
+  }
+
+  /**
+   * Set a local directory where blobs read from Github are saved. When it's set, files are served
+   * from the directory right after the application starts, while they are revalidated with Github
+   * in background, and whenever Github can't be reached. It takes effect only before the first
+   * read.
+   *
+   * @param cacheDirectory Root directory of cache, which can be shared by repositories
+   */
+  public void setCacheDirectory(File cacheDirectory) {
+    this.cacheDirectory = cacheDirectory;
+    this.diskCache =
+        cacheDirectory == null
+            ? null
+            : new DiskBlobCache(
+                new File(
+                    cacheDirectory.getAbsolutePath()
+                        + SystemUtils.FILE_SEPARATOR
+                        + githubUser
+                        + SystemUtils.FILE_SEPARATOR
+                        + repositoryName));
+  }
+
+  /**
+   * The default limit is {@value #DEFAULT_CACHE_DIRECTORY_MAX_BYTES} bytes. Blobs that files of the
+   * cached branches no longer refer to are deleted when the limit is exceeded.
+   *
+   * @param cacheDirectoryMaxBytes Total size of blobs in cache directory that triggers pruning
+   */
+  public void setCacheDirectoryMaxBytes(long cacheDirectoryMaxBytes) {
+    Preconditions.checkArgument(
+        cacheDirectoryMaxBytes >= 0, "Invalid cache directory size %s.", cacheDirectoryMaxBytes);
+    this.cacheDirectoryMaxBytes = cacheDirectoryMaxBytes;
   }
 
   /** @param branchName the branchName to set */
   public void setBranchName(String branchName) {
     this.branchName = branchName;
+    this.commitSnapshot = null;
+  }
+
+  /**
+   * The default interval is {@value #DEFAULT_COMMIT_REFRESH_INTERVAL_SECONDS} seconds. Files read
+   * within the interval come from the same commit, and a change pushed to the branch shows up after
+   * the interval expires.
+   *
+   * @param seconds Number of seconds between resolving the branch to its latest commit, 0 to
+   *     resolve it for every read
+   */
+  public void setCommitRefreshIntervalSeconds(int seconds) {
+    Preconditions.checkArgument(seconds >= 0, "Invalid refresh interval %s.", seconds);
+    this.commitRefreshIntervalMillis = TimeUnit.SECONDS.toMillis(seconds);
+  }
+
+  /**
+   * The default timeout of connecting to Github, or of leasing a connection from the pool, is
+   * {@value #DEFAULT_CONNECT_TIMEOUT_MILLIS} milliseconds. It takes effect only before the first
+   * read.
+   *
+   * @param connectTimeoutMillis Connection timeout in milliseconds
+   */
+  public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+    Preconditions.checkArgument(
+        connectTimeoutMillis >= 0, "Invalid timeout %s.", connectTimeoutMillis);
+    this.connectTimeoutMillis = connectTimeoutMillis;
+  }
+
+  /**
+   * The default size of connection pool is {@value #DEFAULT_MAX_CONNECTIONS}. It takes effect only
+   * before the first read.
+   *
+   * @param maxConnections Maximum number of pooled connections
+   */
+  public void setMaxConnections(int maxConnections) {
+    Preconditions.checkArgument(maxConnections > 0, "Invalid max connections %s.", maxConnections);
+    this.maxConnections = maxConnections;
+  }
+
+  /**
+   * The default number of connections per route is {@value #DEFAULT_MAX_CONNECTIONS_PER_ROUTE}. It
+   * takes effect only before the first read.
+   *
+   * @param maxConnectionsPerRoute Maximum number of pooled connections to the same host
+   */
+  public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+    Preconditions.checkArgument(
+        maxConnectionsPerRoute > 0,
+        "Invalid max connections per route %s.",
+        maxConnectionsPerRoute);
+    this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+  }
+
+  /**
+   * Blobs larger than the threshold are neither held in memory as a whole nor cached in memory.
+   * Their content is streamed from the Github response to reader, or to the cache directory if it
+   * is set. The default threshold is {@value #DEFAULT_STREAMING_THRESHOLD_BYTES} bytes.
+   *
+   * @param streamingThresholdBytes Size of blobs in bytes, above which blobs are streamed
+   */
+  public void setStreamingThresholdBytes(long streamingThresholdBytes) {
+    Preconditions.checkArgument(
+        streamingThresholdBytes >= 0, "Invalid streaming threshold %s.", streamingThresholdBytes);
+    this.streamingThresholdBytes = streamingThresholdBytes;
+  }
+
+  /**
+   * The default timeout of waiting for response data is {@value #DEFAULT_SOCKET_TIMEOUT_MILLIS}
+   * milliseconds. It takes effect only before the first read.
+   *
+   * @param socketTimeoutMillis Socket read timeout in milliseconds
+   */
+  public void setSocketTimeoutMillis(int socketTimeoutMillis) {
+    Preconditions.checkArgument(
+        socketTimeoutMillis >= 0, "Invalid timeout %s.", socketTimeoutMillis);
+    this.socketTimeoutMillis = socketTimeoutMillis;
+  }
+
+  /**
+   * Watch changes of a file or directory. A directory is compared by the object ID of its tree, so
+   * any change under it shows up as a modification of the directory path itself.
+   */
+  @Override
+  public synchronized Closeable watch(String pathOrPrefix, ChangeListener listener)
+      throws IOException {
+    if (closed) {
+      throw new IOException("Repository " + githubUser + "/" + repositoryName + " is closed.");
+    }
+    if (changeDispatcher == null) {
+      changeDispatcher = new ChangeDispatcher(githubUser + "-" + repositoryName);
+    }
+    Closeable watch = changeDispatcher.watch(pathOrPrefix, listener);
+    if (watchExecutor == null) {
+      watchExecutor =
+          Executors.newSingleThreadScheduledExecutor(
+              runnable -> {
+                Thread thread = new Thread(runnable, "gitcon-github-watch");
+                thread.setDaemon(true);
+                return thread;
+              });
+      long interval = Math.max(MIN_WATCH_INTERVAL_MILLIS, commitRefreshIntervalMillis);
+      watchExecutor.scheduleWithFixedDelay(
+          this::checkWatchedPaths, 0, interval, TimeUnit.MILLISECONDS);
+    }
+    return watch;
   }
 }
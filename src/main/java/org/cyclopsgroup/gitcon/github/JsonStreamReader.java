@@ -0,0 +1,258 @@
+package org.cyclopsgroup.gitcon.github;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A minimal pull parser of JSON that reads tokens from a character stream without building a
+ * document in memory. A string value can be consumed as a {@link Reader}, so that a large value is
+ * never held in memory as a whole. The parser trusts the structure of input and doesn't validate
+ * it beyond what is needed to read it.
+ */
+class JsonStreamReader implements Closeable {
+  /** Reader of the string value at current position, that decodes escaped characters */
+  private class StringValueReader extends Reader {
+    private boolean finished;
+
+    @Override
+    public void close() throws IOException {
+      while (!finished) {
+        nextChar();
+      }
+    }
+
+    private int nextChar() throws IOException {
+      int c = readChar();
+      switch (c) {
+        case -1:
+          throw new IOException("String value is not terminated.");
+        case '"':
+          finished = true;
+          return -1;
+        case '\\':
+          int escaped = readChar();
+          return escaped == 'u' ? readUnicode() : unescape(escaped);
+        default:
+          return c;
+      }
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+      if (finished) {
+        return -1;
+      }
+      int count = 0;
+      while (count < length) {
+        int c = nextChar();
+        if (c == -1) {
+          break;
+        }
+        buffer[offset + count++] = (char) c;
+      }
+      return count == 0 && finished ? -1 : count;
+    }
+  }
+
+  private static final int NOTHING_PEEKED = -2;
+
+  private final Reader in;
+  private StringValueReader openString;
+  private int peeked = NOTHING_PEEKED;
+
+  JsonStreamReader(Reader in) {
+    this.in = in;
+  }
+
+  private static boolean isLiteralChar(int c) {
+    return Character.isLetterOrDigit(c) || c == '-' || c == '+' || c == '.';
+  }
+
+  private static int unescape(int c) throws IOException {
+    switch (c) {
+      case '"':
+      case '\\':
+      case '/':
+        return c;
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      default:
+        throw new IOException("Unexpected escaped character " + (char) c);
+    }
+  }
+
+  void beginArray() throws IOException {
+    expect('[');
+  }
+
+  void beginObject() throws IOException {
+    expect('{');
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  void endArray() throws IOException {
+    expect(']');
+  }
+
+  void endObject() throws IOException {
+    expect('}');
+  }
+
+  private void expect(char expected) throws IOException {
+    int c = peekToken();
+    if (c != expected) {
+      throw new IOException("Expect " + expected + " but got " + (c == -1 ? "EOF" : (char) c));
+    }
+    readChar();
+  }
+
+  /**
+   * @return True if current object or array has more elements, in which case the comma before the
+   *     next element is consumed
+   * @throws IOException If stream can't be read
+   */
+  boolean hasNext() throws IOException {
+    int c = peekToken();
+    if (c == ',') {
+      readChar();
+      c = peekToken();
+    }
+    return c != '}' && c != ']' && c != -1;
+  }
+
+  /** @return True if the next value is JSON null */
+  boolean isNextNull() throws IOException {
+    return peekToken() == 'n';
+  }
+
+  private String nextLiteral() throws IOException {
+    peekToken();
+    StringBuilder literal = new StringBuilder();
+    while (isLiteralChar(peekChar())) {
+      literal.append((char) readChar());
+    }
+    if (literal.length() == 0) {
+      int c = peekChar();
+      throw new IOException("Unexpected character " + (c == -1 ? "EOF" : (char) c));
+    }
+    return literal.toString();
+  }
+
+  long nextLong() throws IOException {
+    String literal = nextLiteral();
+    try {
+      return Long.parseLong(literal);
+    } catch (NumberFormatException e) {
+      throw new IOException("Value " + literal + " is not a long.", e);
+    }
+  }
+
+  String nextName() throws IOException {
+    String name = nextString();
+    expect(':');
+    return name;
+  }
+
+  void nextNull() throws IOException {
+    String literal = nextLiteral();
+    if (!literal.equals("null")) {
+      throw new IOException("Expect null but got " + literal);
+    }
+  }
+
+  String nextString() throws IOException {
+    return IOUtils.toString(nextStringReader());
+  }
+
+  /**
+   * Start reading a string value. The returned reader doesn't need to be fully consumed, the rest
+   * of the value is skipped when the parser moves on.
+   *
+   * @return Reader of decoded characters of the string value
+   * @throws IOException If stream can't be read
+   */
+  Reader nextStringReader() throws IOException {
+    expect('"');
+    openString = new StringValueReader();
+    return openString;
+  }
+
+  private int peekChar() throws IOException {
+    if (peeked == NOTHING_PEEKED) {
+      peeked = in.read();
+    }
+    return peeked;
+  }
+
+  private int peekToken() throws IOException {
+    if (openString != null) {
+      openString.close();
+      openString = null;
+    }
+    while (Character.isWhitespace(peekChar())) {
+      readChar();
+    }
+    return peekChar();
+  }
+
+  private int readChar() throws IOException {
+    if (peeked != NOTHING_PEEKED) {
+      int c = peeked;
+      peeked = NOTHING_PEEKED;
+      return c;
+    }
+    return in.read();
+  }
+
+  private int readUnicode() throws IOException {
+    int value = 0;
+    for (int i = 0; i < 4; i++) {
+      int digit = Character.digit(readChar(), 16);
+      if (digit == -1) {
+        throw new IOException("Invalid unicode escape sequence.");
+      }
+      value = value * 16 + digit;
+    }
+    return value;
+  }
+
+  void skipValue() throws IOException {
+    switch (peekToken()) {
+      case '{':
+        beginObject();
+        while (hasNext()) {
+          nextName();
+          skipValue();
+        }
+        endObject();
+        break;
+      case '[':
+        beginArray();
+        while (hasNext()) {
+          skipValue();
+        }
+        endArray();
+        break;
+      case '"':
+        nextStringReader().close();
+        openString = null;
+        break;
+      default:
+        nextLiteral();
+    }
+  }
+}
@@ -1,12 +1,14 @@
 package org.cyclopsgroup.gitcon.github;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import org.cyclopsgroup.gitcon.ChangeListener;
 import org.cyclopsgroup.gitcon.FileSystemResourceRepository;
 import org.cyclopsgroup.gitcon.Resource;
 import org.cyclopsgroup.gitcon.ResourceRepository;
 
-public class LocalOrGithubResourceRepository implements ResourceRepository {
+public class LocalOrGithubResourceRepository implements Closeable, ResourceRepository {
   private static ResourceRepository createFileSystemRepository() {
     return new FileSystemResourceRepository(new File(getPropertyOrFail("gitcon.dir")));
   }
@@ -37,8 +39,20 @@ public class LocalOrGithubResourceRepository implements ResourceRepository {
     }
   }
 
+  @Override
+  public void close() throws IOException {
+    if (delegate instanceof Closeable) {
+      ((Closeable) delegate).close();
+    }
+  }
+
   @Override
   public Resource getResource(String filePath) {
     return delegate.getResource(filePath);
   }
+
+  @Override
+  public Closeable watch(String pathOrPrefix, ChangeListener listener) throws IOException {
+    return delegate.watch(pathOrPrefix, listener);
+  }
 }
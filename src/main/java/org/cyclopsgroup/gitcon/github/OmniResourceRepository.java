@@ -1,15 +1,17 @@
 package org.cyclopsgroup.gitcon.github;
 
 import com.google.common.base.Strings;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import org.cyclopsgroup.gitcon.ChangeListener;
 import org.cyclopsgroup.gitcon.FileSystemResourceRepository;
 import org.cyclopsgroup.gitcon.Resource;
 import org.cyclopsgroup.gitcon.ResourceRepository;
 
-public class OmniResourceRepository implements ResourceRepository {
+public class OmniResourceRepository implements Closeable, ResourceRepository {
   private static final Pattern FILE_PATTERN = Pattern.compile("^file:(.+)$");
   private static final Pattern GITHUB_PATTERN =
       Pattern.compile("^github\\.com:((\\w|-)+)/((\\w|-)+)(@(.+))?$");
@@ -43,11 +45,23 @@ public class OmniResourceRepository implements ResourceRepository {
     this.repository = createDelegate(repositoryPath);
   }
 
+  @Override
+  public void close() throws IOException {
+    if (repository instanceof Closeable) {
+      ((Closeable) repository).close();
+    }
+  }
+
   @Override
   public Resource getResource(String filePath) {
     return repository.getResource(filePath);
   }
 
+  @Override
+  public Closeable watch(String pathOrPrefix, ChangeListener listener) throws IOException {
+    return repository.watch(pathOrPrefix, listener);
+  }
+
   ResourceRepository getDelegateRepository() {
     return repository;
   }
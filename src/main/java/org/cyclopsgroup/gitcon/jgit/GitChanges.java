@@ -0,0 +1,76 @@
+package org.cyclopsgroup.gitcon.jgit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.cyclopsgroup.gitcon.ChangeEvent;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/** Computes {@link ChangeEvent} between two commits */
+final class GitChanges {
+  /**
+   * @param repository Repository that has both commits
+   * @param oldCommitId Commit before change, or NULL if every file is added
+   * @param newCommitId Commit after change
+   * @param filter Filter of paths to compare, {@link TreeFilter#ALL} for all paths
+   * @return Changes of files that pass the filter
+   * @throws IOException If objects can't be read
+   */
+  static ChangeEvent diff(
+      Repository repository, ObjectId oldCommitId, ObjectId newCommitId, TreeFilter filter)
+      throws IOException {
+    List<String> added = new ArrayList<>();
+    List<String> modified = new ArrayList<>();
+    List<String> deleted = new ArrayList<>();
+    RevWalk revWalk = new RevWalk(repository);
+    TreeWalk treeWalk = new TreeWalk(repository);
+    try {
+      if (oldCommitId == null) {
+        treeWalk.addTree(new EmptyTreeIterator());
+      } else {
+        treeWalk.addTree(revWalk.parseCommit(oldCommitId).getTree());
+      }
+      treeWalk.addTree(revWalk.parseCommit(newCommitId).getTree());
+      treeWalk.setRecursive(true);
+      treeWalk.setFilter(
+          filter == TreeFilter.ALL
+              ? TreeFilter.ANY_DIFF
+              : AndTreeFilter.create(filter, TreeFilter.ANY_DIFF));
+      for (DiffEntry entry : DiffEntry.scan(treeWalk)) {
+        switch (entry.getChangeType()) {
+          case ADD:
+          case COPY:
+            added.add(entry.getNewPath());
+            break;
+          case DELETE:
+            deleted.add(entry.getOldPath());
+            break;
+          case RENAME:
+            deleted.add(entry.getOldPath());
+            added.add(entry.getNewPath());
+            break;
+          default:
+            modified.add(entry.getNewPath());
+        }
+      }
+    } finally {
+      treeWalk.release();
+      revWalk.release();
+    }
+    return new ChangeEvent(
+        oldCommitId == null ? null : oldCommitId.name(),
+        newCommitId.name(),
+        added,
+        modified,
+        deleted);
+  }
+
+  private GitChanges() {}
+}
@@ -4,21 +4,27 @@ import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
 import java.io.File;
+import java.io.IOException;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.SystemUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.eclipse.jgit.api.TransportCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.JschConfigSessionFactory;
 import org.eclipse.jgit.transport.OpenSshConfig;
 import org.eclipse.jgit.transport.SshSessionFactory;
+import org.eclipse.jgit.transport.SshTransport;
 import org.eclipse.jgit.util.FS;
 
-/** Class that invokes {@link JGitCall} with special logic around invocations */
-abstract class JGitCallExecutor {
-  private static class Direct extends JGitCallExecutor {
-    @Override
-    <T> T invokeCall(JGitCall<T> call) throws GitAPIException {
-      return call.call();
-    }
-  }
-
+/**
+ * Class that invokes JGit commands accessing remote repository, with credentials and SSH identity
+ * configured for each command. Since nothing global is changed, commands of different
+ * repositories run in parallel.
+ */
+class JGitCallExecutor {
   private static class KeySessionFactory extends JschConfigSessionFactory {
     private final String privateKeyPath;
 
@@ -40,81 +46,104 @@ abstract class JGitCallExecutor {
     }
   }
 
-  private static class SshContext extends JGitCallExecutor {
-    private final KeySessionFactory context;
+  private static final String BUILD_IN_SSH_KEY = "META-INF/gitcon/gitconreader-ssh.key";
 
-    private SshContext(KeySessionFactory context) {
-      this.context = context;
-    }
+  private static final Log LOG = LogFactory.getLog(JGitCallExecutor.class);
 
-    @Override
-    <T> T invokeCall(JGitCall<T> call) throws GitAPIException {
-      if (!new File(context.privateKeyPath).canRead()) {
-        throw new IllegalArgumentException(
-            "Private key " + context.privateKeyPath + " is not accessible");
-      }
-      synchronized (JGitCallExecutor.class) {
-        SshSessionFactory original = SshSessionFactory.getInstance();
-        SshSessionFactory.setInstance(context);
-        try {
-          return call.call();
-        } finally {
-          SshSessionFactory.setInstance(original);
-        }
-      }
-    }
-  }
-
-  private static class Synchronized extends JGitCallExecutor {
-    private final JGitCallExecutor executor;
-
-    private Synchronized(JGitCallExecutor executor) {
-      this.executor = executor;
-    }
-
-    @Override
-    <T> T invokeCall(JGitCall<T> call) throws GitAPIException {
-      synchronized (JGitCallExecutor.class) {
-        return executor.invokeCall(call);
-      }
-    }
-  }
+  private final CredentialsProvider credentialsProvider;
 
-  private static final JGitCallExecutor DIRECT_INSTANCE = new Direct();
+  private final KeySessionFactory sshSessionFactory;
 
-  /** @return A no-op implementation that invokes calls directly */
-  static JGitCallExecutor direct() {
-    return DIRECT_INSTANCE;
+  /**
+   * @param credentialsProvider Credentials provider for commands, or NULL if it's not needed
+   * @param sshPrivateKey Path to SSH private key, or NULL to use default system SSH key
+   */
+  JGitCallExecutor(CredentialsProvider credentialsProvider, String sshPrivateKey) {
+    this.credentialsProvider = credentialsProvider;
+    this.sshSessionFactory = sshPrivateKey == null ? null : new KeySessionFactory(sshPrivateKey);
   }
 
   /**
-   * @param executor Given executor
-   * @return A wrapper of given executor that makes sure invocation is synchronized globally
+   * Create an executor with given authentication settings
+   *
+   * @param workingDirectory Local working directory, where build-in SSH private key is copied to
+   * @param sshIdentity Path to SSH private key, {@literal default} or NULL for the default system
+   *     SSH key, or {@literal buildin} for the build-in SSH private key
+   * @param buildInSshIdentityUsed True to use the build-in SSH private key
+   * @param credentialsProvider Credentials provider, or NULL if it's not needed
+   * @return Executor that applies given authentication to commands
+   * @throws IOException If build-in SSH private key can't be copied
    */
-  static JGitCallExecutor synchronize(JGitCallExecutor executor) {
-    return new Synchronized(executor);
+  static JGitCallExecutor create(
+      File workingDirectory,
+      String sshIdentity,
+      boolean buildInSshIdentityUsed,
+      CredentialsProvider credentialsProvider)
+      throws IOException {
+    // Create local file for build-in SSH private key
+    File sshKey = null;
+    if (buildInSshIdentityUsed || StringUtils.equalsIgnoreCase(sshIdentity, "buildin")) {
+      sshKey =
+          new File(
+              workingDirectory.getAbsolutePath()
+                  + SystemUtils.FILE_SEPARATOR
+                  + "gitconreader-ssh.key");
+      FileUtils.copyURLToFile(
+          JGitCallExecutor.class.getClassLoader().getResource(BUILD_IN_SSH_KEY), sshKey);
+      LOG.info("Build-in SSH private key is copied into " + sshKey);
+
+    } else if (sshIdentity != null && !sshIdentity.equalsIgnoreCase("default")) {
+      sshKey = new File(sshIdentity);
+      LOG.info("About to use specified SSH key " + sshIdentity);
+    } else {
+      LOG.info("Default system SSH key will apply");
+    }
+
+    if (sshKey == null) {
+      return new JGitCallExecutor(credentialsProvider, null);
+    }
+    if (!sshKey.canRead()) {
+      throw new IllegalStateException(
+          "Configured SSH private key " + sshKey + " is not accessible");
+    }
+    LOG.info("JGit executor is set with build-in SSH key " + sshKey);
+    return new JGitCallExecutor(credentialsProvider, sshKey.getAbsolutePath());
   }
 
   /**
-   * Because JGit relies on JSch to handle SSH transport, which binds SSH key via static instance,
-   * there's no elegant way to allow multiple SSH keys in the same JVM. This decorator of executor
-   * binds given SSH private key with a global lock before each invocation, and restore to
-   * previously used SSH key after invocation.
+   * Set credentials and SSH identity to given command without calling it
    *
-   * @param sshPrivateKey Path to SSH private key
-   * @return Executor that knows to setup Jsch to use given SSH private key before each call, and
-   *     retore it after the invocation.
+   * @param command Command to configure
+   * @return The same command
    */
-  static JGitCallExecutor withSshPrivateKey(String sshPrivateKey) {
-    return new SshContext(new KeySessionFactory(sshPrivateKey));
+  <C extends TransportCommand<C, ?>> C configure(C command) {
+    if (credentialsProvider != null) {
+      command.setCredentialsProvider(credentialsProvider);
+    }
+    if (sshSessionFactory != null) {
+      SshSessionFactory factory = sshSessionFactory;
+      command.setTransportConfigCallback(
+          transport -> {
+            if (transport instanceof SshTransport) {
+              ((SshTransport) transport).setSshSessionFactory(factory);
+            }
+          });
+    }
+    return command;
   }
 
   /**
-   * Invoke given call
+   * Configure and invoke given command
    *
-   * @param call The call to invoke
-   * @return Some result
+   * @param command The command to invoke
+   * @return Result of command
    * @throws GitAPIException Allows JGit exceptions
    */
-  abstract <T> T invokeCall(JGitCall<T> call) throws GitAPIException;
+  <C extends TransportCommand<C, T>, T> T invokeCall(C command) throws GitAPIException {
+    if (sshSessionFactory != null && !new File(sshSessionFactory.privateKeyPath).canRead()) {
+      throw new IllegalArgumentException(
+          "Private key " + sshSessionFactory.privateKeyPath + " is not accessible");
+    }
+    return configure(command).call();
+  }
 }
@@ -0,0 +1,388 @@
+package org.cyclopsgroup.gitcon.jgit;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cyclopsgroup.gitcon.ChangeDispatcher;
+import org.cyclopsgroup.gitcon.ChangeEvent;
+import org.cyclopsgroup.gitcon.ChangeListener;
+import org.cyclopsgroup.gitcon.Resource;
+import org.cyclopsgroup.gitcon.ResourceMetadata;
+import org.cyclopsgroup.gitcon.ResourceRepository;
+import org.cyclopsgroup.gitcon.StaticLocalResourceRepository;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.FetchResult;
+import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * A {@link ResourceRepository} that keeps a bare clone of Git repository and reads files straight
+ * from Git objects of the current commit, without a checked-out working tree. {@link #update()}
+ * fetches from remote and moves the current commit, which takes effect for reads that start after
+ * it. Authentication is configured the same way as {@link JGitSource}. Files changed by an update
+ * are published to {@link ChangeListener}s.
+ */
+public class JGitResourceRepository implements Closeable, ResourceRepository {
+  private class GitResource extends Resource {
+    private final String path;
+
+    private GitResource(String path) {
+      this.path = path;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof GitResource
+          && ((GitResource) o).getRepository() == getRepository()
+          && ((GitResource) o).path.equals(path);
+    }
+
+    /** @return Object ID of the blob of file in the current commit */
+    private ObjectId getBlobId() throws IOException {
+      RevCommit commit = currentCommit;
+      if (commit == null) {
+        throw new IllegalStateException("Repository " + repoUri + " is not initialized.");
+      }
+      TreeWalk walk = TreeWalk.forPath(repository, path, commit.getTree());
+      if (walk == null) {
+        throw new FileNotFoundException("File " + this + " doesn't exist.");
+      }
+      try {
+        if ((walk.getRawMode(0) & FileMode.TYPE_MASK) != FileMode.TYPE_FILE) {
+          throw new FileNotFoundException("File " + this + " is not a file.");
+        }
+        return walk.getObjectId(0);
+      } finally {
+        walk.release();
+      }
+    }
+
+    /** Modification time is unknown since finding the commit that last changed file is costly */
+    @Override
+    public ResourceMetadata getMetadata() throws IOException {
+      ObjectId blobId = getBlobId();
+      return new ResourceMetadata(blobId.name(), getSize(blobId), ResourceMetadata.UNKNOWN);
+    }
+
+    private JGitResourceRepository getRepository() {
+      return JGitResourceRepository.this;
+    }
+
+    private long getSize(ObjectId blobId) throws IOException {
+      ObjectReader reader = repository.newObjectReader();
+      try {
+        return reader.getObjectSize(blobId, Constants.OBJ_BLOB);
+      } finally {
+        reader.release();
+      }
+    }
+
+    /** @return Object ID of blob in the current commit, or NULL if file doesn't exist */
+    @Override
+    public String getVersion() throws IOException {
+      try {
+        return getBlobId().name();
+      } catch (FileNotFoundException e) {
+        return null;
+      }
+    }
+
+    @Override
+    public int hashCode() {
+      return path.hashCode();
+    }
+
+    @Override
+    public void read(CheckedStreamConsumer consumer) throws IOException {
+      ObjectId blobId = getBlobId();
+      try (InputStream in = repository.open(blobId, Constants.OBJ_BLOB).openStream()) {
+        consumer.consume(in);
+      }
+    }
+
+    /** Small blobs share the array cached by JGit, larger ones are read into a new array */
+    @Override
+    public ByteBuffer readAsByteBuffer() throws IOException {
+      ObjectLoader loader = repository.open(getBlobId(), Constants.OBJ_BLOB);
+      if (loader.isLarge()) {
+        return super.readAsByteBuffer();
+      }
+      return ByteBuffer.wrap(loader.getCachedBytes()).asReadOnlyBuffer();
+    }
+
+    @Override
+    public Resource reference(String relativePath) {
+      String parent = path.contains("/") ? path.substring(0, path.lastIndexOf('/') + 1) : "";
+      String referencePath = FilenameUtils.normalizeNoEndSeparator(parent + relativePath, true);
+      Validate.isTrue(
+          referencePath != null, "Path " + relativePath + " is out of repository from " + path);
+      return new GitResource(StringUtils.removeStart(referencePath, "/"));
+    }
+
+    @Override
+    public long size() throws IOException {
+      return getSize(getBlobId());
+    }
+
+    @Override
+    public String toString() {
+      return repoUri + ":" + path;
+    }
+  }
+
+  private static final Log LOG = LogFactory.getLog(JGitResourceRepository.class);
+
+  private static final String REMOTE_NAME = "origin";
+
+  private String branchOrCommit;
+
+  private boolean buildInSshIdentityUsed;
+
+  private final ChangeDispatcher changeDispatcher;
+
+  private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+  private CredentialsProvider credentialsProvider;
+
+  private volatile RevCommit currentCommit;
+
+  private final File directory;
+
+  private JGitCallExecutor executor;
+
+  private Git git;
+
+  private final String repoUri;
+
+  private Repository repository;
+
+  private String sshIdentity;
+
+  /**
+   * Constructor that uses a directory under system temporary directory
+   *
+   * @param repoUri Git repository URI
+   */
+  public JGitResourceRepository(String repoUri) {
+    this(repoUri, StaticLocalResourceRepository.createTempDirectory());
+  }
+
+  /**
+   * @param repoUri Git repository URI
+   * @param directory Local directory of bare repository, which is wiped out in {@link #close()}
+   */
+  public JGitResourceRepository(String repoUri, File directory) {
+    Validate.notNull(repoUri, "Git repository URI can not be NULL");
+    Validate.notNull(directory, "Directory can not be NULL");
+    this.repoUri = repoUri;
+    this.directory = directory;
+    this.changeDispatcher = new ChangeDispatcher(directory.getName());
+  }
+
+  /**
+   * Add a listener that is called from the thread of {@link #update()} after an update switches
+   * commit
+   *
+   * @param listener Listener to add
+   */
+  public void addChangeListener(ChangeListener listener) {
+    Validate.notNull(listener, "Listener can't be NULL.");
+    changeListeners.add(listener);
+  }
+
+  @Override
+  public void close() throws IOException {
+    changeDispatcher.close();
+    if (git != null) {
+      git.close();
+    }
+    if (directory.isDirectory()) {
+      LOG.info("Clean up local directory " + directory);
+      FileUtils.deleteDirectory(directory);
+    }
+  }
+
+  /**
+   * Fetch from remote and resolve the commit to read from
+   *
+   * @return The commit to read from, or NULL if it's the current commit already
+   */
+  private RevCommit fetchCommit() throws GitAPIException, IOException {
+    String refName = branchOrCommit == null ? Constants.HEAD : Constants.R_HEADS + branchOrCommit;
+    RevCommit current = currentCommit;
+    if (current != null) {
+      // Checking advertised refs is enough to know if tracked branch is unchanged
+      Collection<Ref> remoteRefs = executor.invokeCall(git.lsRemote().setRemote(REMOTE_NAME));
+      for (Ref ref : remoteRefs) {
+        if (ref.getName().equals(refName) && ref.getObjectId().equals(current)) {
+          return null;
+        }
+      }
+    }
+
+    FetchResult result = executor.invokeCall(git.fetch().setRemote(REMOTE_NAME));
+    Ref ref = result.getAdvertisedRef(refName);
+    ObjectId commitId = ref == null ? null : ref.getObjectId();
+    if (commitId == null && branchOrCommit != null) {
+      commitId = repository.resolve(branchOrCommit);
+    }
+    if (commitId == null) {
+      throw new IOException(
+          "Can't resolve " + (branchOrCommit == null ? "HEAD" : branchOrCommit) + " in " + repoUri);
+    }
+    if (commitId.equals(current)) {
+      return null;
+    }
+    RevWalk walk = new RevWalk(repository);
+    try {
+      return walk.parseCommit(commitId);
+    } finally {
+      walk.release();
+    }
+  }
+
+  /** @return ID of the commit files are read from, or NULL if repository is not initialized */
+  public String getCurrentCommitId() {
+    RevCommit commit = currentCommit;
+    return commit == null ? null : commit.name();
+  }
+
+  @Override
+  public Resource getResource(String filePath) {
+    return new GitResource(StringUtils.removeStart(filePath, "/"));
+  }
+
+  /**
+   * Create a bare repository that fetches all branches from remote, and resolve the commit to read
+   * from. This method should be called before instance can be used.
+   *
+   * @throws GitAPIException Allows JGit exceptions
+   * @throws IOException If local repository can't be created
+   */
+  public void init() throws GitAPIException, IOException {
+    if (directory.isDirectory()) {
+      FileUtils.deleteDirectory(directory);
+    }
+    FileUtils.forceMkdir(directory);
+    executor =
+        JGitCallExecutor.create(
+            directory, sshIdentity, buildInSshIdentityUsed, credentialsProvider);
+
+    File gitDirectory = new File(directory, "gitrepo.git");
+    git = Git.init().setBare(true).setDirectory(gitDirectory).call();
+    repository = git.getRepository();
+    StoredConfig config = repository.getConfig();
+    config.setString("remote", REMOTE_NAME, "url", repoUri);
+    config.setString(
+        "remote",
+        REMOTE_NAME,
+        "fetch",
+        "+" + Constants.R_HEADS + "*:" + Constants.R_REMOTES + REMOTE_NAME + "/*");
+    config.save();
+
+    LOG.info("Fetching " + repoUri + " into bare repository " + gitDirectory);
+    update();
+  }
+
+  /** @param listener Listener to remove */
+  public void removeChangeListener(ChangeListener listener) {
+    changeListeners.remove(listener);
+  }
+
+  /**
+   * Caller sets branchOrCommit in order to read files from a non-default branch or specified
+   * commit.
+   *
+   * @param branch Branch or commit in Git repository
+   */
+  public void setBranchOrCommit(String branch) {
+    this.branchOrCommit = branch;
+  }
+
+  /**
+   * @param buildInSshIdentityUsed True to use the build-in SSH priavate key
+   * @see JGitSource#setBuildInSshIdentityUsed(boolean)
+   */
+  public void setBuildInSshIdentityUsed(boolean buildInSshIdentityUsed) {
+    this.buildInSshIdentityUsed = buildInSshIdentityUsed;
+  }
+
+  /**
+   * @param privateKeyPath Path to SSH private key, {@literal default} or {@literal buildin}
+   * @see JGitSource#setSshIdentity(String)
+   */
+  public void setSshIdentity(String privateKeyPath) {
+    this.sshIdentity = privateKeyPath;
+  }
+
+  /**
+   * @param user Login user name
+   * @param password Login password
+   * @see JGitSource#setUserPassword(String, String)
+   */
+  public void setUserPassword(String user, String password) {
+    Validate.notNull(user, "User name must be supplied");
+    Validate.notNull(password, "Password must be supplied");
+    this.credentialsProvider = new UsernamePasswordCredentialsProvider(user, password);
+  }
+
+  /**
+   * Fetch from remote and switch to the latest commit of branch. Reads that are in progress finish
+   * with the previous commit. Nothing watches remote by itself, so changes are only seen by
+   * listeners and watchers when this method is called.
+   *
+   * @return Files changed by switching commit, or NULL if current commit is unchanged
+   * @throws GitAPIException Allows JGit exceptions
+   * @throws IOException If local repository can't be read
+   */
+  public ChangeEvent update() throws GitAPIException, IOException {
+    RevCommit commit = fetchCommit();
+    if (commit == null) {
+      LOG.info("Commit " + getCurrentCommitId() + " of " + repoUri + " is unchanged.");
+      return null;
+    }
+    ChangeEvent event = GitChanges.diff(repository, currentCommit, commit, TreeFilter.ALL);
+    currentCommit = commit;
+    LOG.info("Switched to commit " + commit.name() + " of " + repoUri + ": " + event);
+    for (ChangeListener listener : changeListeners) {
+      try {
+        listener.onChange(event);
+      } catch (RuntimeException e) {
+        LOG.error("Listener " + listener + " failed to handle " + event, e);
+      }
+    }
+    changeDispatcher.publish(event);
+    return event;
+  }
+
+  /** Watch changes brought in by {@link #update()} */
+  @Override
+  public Closeable watch(String pathOrPrefix, ChangeListener listener) {
+    return changeDispatcher.watch(pathOrPrefix, listener);
+  }
+}
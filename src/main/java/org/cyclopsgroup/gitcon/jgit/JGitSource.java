@@ -1,21 +1,44 @@
 package org.cyclopsgroup.gitcon.jgit;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.SystemUtils;
 import org.apache.commons.lang.Validate;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.cyclopsgroup.gitcon.ChangeEvent;
 import org.cyclopsgroup.gitcon.FileSystemSource;
 import org.eclipse.jgit.api.CloneCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.PullResult;
+import org.eclipse.jgit.api.ResetCommand.ResetType;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.FetchResult;
+import org.eclipse.jgit.transport.URIish;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 /**
  * Implementation of {@link FileSystemSource} that gets file from a Git repository. There are
@@ -37,10 +60,21 @@ import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
  *       build-in private key from Gitcon jar file, exposing your Git repo to user {@literal
  *       gitconreader} is equivalent to exposing it to public.
  * </ol>
+ *
+ * <p>For a large repository, {@link #setSingleBranch(boolean)} limits the clone to the branch
+ * specified by {@link #setBranchOrCommit(String)}, and {@link #setPaths(String...)} limits the
+ * files that are written into working directory to given directories or files.
  */
 public class JGitSource implements FileSystemSource {
   private static final Log LOG = LogFactory.getLog(JGitSource.class);
 
+  /** Section of Git config where options of repository are recorded */
+  private static final String CONFIG_SECTION = "gitcon";
+
+  private static final String CONFIG_PATHS = "paths";
+
+  private static final String REMOTE_NAME = "origin";
+
   private volatile String branchOrCommit;
 
   private String sshIdentity;
@@ -53,8 +87,12 @@ public class JGitSource implements FileSystemSource {
 
   private Git git;
 
+  private List<String> paths = Collections.emptyList();
+
   private final String repoUri;
 
+  private boolean singleBranch;
+
   /**
    * Constructor that uses a working directory under system temporary directory
    *
@@ -65,12 +103,258 @@ public class JGitSource implements FileSystemSource {
     this.repoUri = repoUri;
   }
 
+  @Override
+  public String getRemoteHost() {
+    try {
+      return new URIish(repoUri).getHost();
+    } catch (URISyntaxException e) {
+      LOG.warn("Can't get host from Git repository URI " + repoUri, e);
+      return null;
+    }
+  }
+
+  private String getTrackedRefName() {
+    return branchOrCommit == null ? Constants.HEAD : Constants.R_HEADS + branchOrCommit;
+  }
+
+  /**
+   * Compare the tip of tracked branch in remote repository with local HEAD, which only costs the
+   * ref advertisement of remote.
+   *
+   * @return False if remote branch is known to point to local HEAD
+   */
+  private boolean isRemoteChanged() throws GitAPIException, IOException {
+    Collection<Ref> remoteRefs = executor.invokeCall(git.lsRemote().setRemote(REMOTE_NAME));
+    String refName = getTrackedRefName();
+    for (Ref ref : remoteRefs) {
+      if (ref.getName().equals(refName)) {
+        return !ref.getObjectId().equals(git.getRepository().resolve(Constants.HEAD));
+      }
+    }
+    // Not a branch, let fetch or pull decide
+    return true;
+  }
+
+  private ObjectId resolveCommit(FetchResult result) throws IOException {
+    Ref ref = result.getAdvertisedRef(getTrackedRefName());
+    ObjectId commitId = ref == null ? null : ref.getObjectId();
+    if (commitId == null && branchOrCommit != null) {
+      commitId = git.getRepository().resolve(branchOrCommit);
+    }
+    if (commitId == null) {
+      throw new IOException(
+          "Can't resolve " + (branchOrCommit == null ? "HEAD" : branchOrCommit) + " in " + repoUri);
+    }
+    return commitId;
+  }
+
+  /**
+   * Write files in given commit that match path filter into working directory, and delete files
+   * that are not in the commit anymore.
+   */
+  private void exportPaths(ObjectId commitId, File directory) throws IOException {
+    Repository repository = git.getRepository();
+    Set<File> exportedFiles = new HashSet<>();
+    RevWalk revWalk = new RevWalk(repository);
+    TreeWalk treeWalk = new TreeWalk(repository);
+    try {
+      treeWalk.addTree(revWalk.parseCommit(commitId).getTree());
+      treeWalk.setRecursive(true);
+      treeWalk.setFilter(PathFilterGroup.createFromStrings(paths));
+      while (treeWalk.next()) {
+        if ((treeWalk.getRawMode(0) & FileMode.TYPE_MASK) != FileMode.TYPE_FILE) {
+          continue;
+        }
+        File file = new File(directory, treeWalk.getPathString());
+        FileUtils.forceMkdir(file.getParentFile());
+        try (OutputStream out = new FileOutputStream(file)) {
+          repository.open(treeWalk.getObjectId(0)).copyTo(out);
+        }
+        exportedFiles.add(file);
+      }
+    } finally {
+      treeWalk.release();
+      revWalk.release();
+    }
+
+    for (String path : paths) {
+      File root = new File(directory, path);
+      Collection<File> existingFiles =
+          root.isDirectory()
+              ? FileUtils.listFiles(root, null, true)
+              : Collections.singletonList(root);
+      for (File file : existingFiles) {
+        if (!exportedFiles.contains(file)) {
+          FileUtils.deleteQuietly(file);
+        }
+      }
+    }
+    LOG.info("Exported " + exportedFiles.size() + " files of commit " + commitId.name());
+  }
+
+  /**
+   * Fetch from remote repository and export files of branch or commit if it's changed
+   *
+   * @param force True to export files even if commit is not changed
+   * @return True if files in working directory are changed
+   */
+  private boolean fetchAndExport(File directory, boolean force)
+      throws GitAPIException, IOException {
+    FetchResult result = executor.invokeCall(git.fetch().setRemote(REMOTE_NAME));
+
+    Repository repository = git.getRepository();
+    ObjectId commitId = resolveCommit(result);
+    if (!force && commitId.equals(repository.resolve(Constants.HEAD))) {
+      return false;
+    }
+    exportPaths(commitId, directory);
+
+    // HEAD is detached at the exported commit so that the next update knows where it was
+    RefUpdate update = repository.updateRef(Constants.HEAD, true);
+    update.setNewObjectId(commitId);
+    update.forceUpdate();
+    return true;
+  }
+
+  /** @return Changes between two commits in given paths, or NULL if there is none */
+  private ChangeEvent diff(ObjectId oldCommitId, ObjectId newCommitId) throws IOException {
+    TreeFilter filter =
+        paths.isEmpty() ? TreeFilter.ALL : PathFilterGroup.createFromStrings(paths);
+    ChangeEvent event = GitChanges.diff(git.getRepository(), oldCommitId, newCommitId, filter);
+    LOG.info("Update brought in changes " + event);
+    return event.isEmpty() ? null : event;
+  }
+
   public String getBranchOrCommmit() {
     return branchOrCommit;
   }
 
+  /**
+   * Create an empty repository whose remote fetches either all branches or only the specified
+   * branch, and export only files that match the path filter.
+   */
+  private void initPathFilteredRepository(File sourceDirectory)
+      throws GitAPIException, IOException {
+    git = Git.init().setDirectory(sourceDirectory).call();
+    StoredConfig config = git.getRepository().getConfig();
+    config.setString("remote", REMOTE_NAME, "url", repoUri);
+    String branches = singleBranch ? branchOrCommit : "*";
+    String refSpec =
+        String.format(
+            "+%s%s:%s%s/%s",
+            Constants.R_HEADS, branches, Constants.R_REMOTES, REMOTE_NAME, branches);
+    config.setString("remote", REMOTE_NAME, "fetch", refSpec);
+    config.setString(CONFIG_SECTION, null, CONFIG_PATHS, StringUtils.join(paths, ','));
+    config.save();
+
+    LOG.info("Fetching " + repoUri + " for files in " + paths + " into " + sourceDirectory);
+    fetchAndExport(sourceDirectory, true);
+  }
+
+  /**
+   * Check if repository left by a previous run was created from the same remote with the same
+   * path filter, and all objects of its HEAD are intact.
+   */
+  private boolean isReusable(Repository repository) {
+    StoredConfig config = repository.getConfig();
+    String url = config.getString("remote", REMOTE_NAME, "url");
+    if (!repoUri.equals(url)) {
+      LOG.warn("Existing repository points to " + url + " instead of " + repoUri);
+      return false;
+    }
+    String existingPaths =
+        StringUtils.defaultString(config.getString(CONFIG_SECTION, null, CONFIG_PATHS));
+    if (!existingPaths.equals(StringUtils.join(paths, ','))) {
+      LOG.warn("Existing repository has files of [" + existingPaths + "] instead of " + paths);
+      return false;
+    }
+
+    RevWalk revWalk = new RevWalk(repository);
+    TreeWalk treeWalk = new TreeWalk(repository);
+    try {
+      ObjectId head = repository.resolve(Constants.HEAD);
+      if (head == null) {
+        LOG.warn("Existing repository has no HEAD.");
+        return false;
+      }
+      if (paths.isEmpty()
+          && branchOrCommit != null
+          && !repository.getFullBranch().equals(Constants.R_HEADS + branchOrCommit)
+          && !head.name().equals(branchOrCommit)) {
+        LOG.warn(
+            "Existing repository is at "
+                + repository.getFullBranch()
+                + " instead of "
+                + branchOrCommit);
+        return false;
+      }
+      treeWalk.addTree(revWalk.parseCommit(head).getTree());
+      treeWalk.setRecursive(true);
+      while (treeWalk.next()) {
+        if (!repository.getObjectDatabase().has(treeWalk.getObjectId(0))) {
+          LOG.warn("Existing repository misses object of " + treeWalk.getPathString());
+          return false;
+        }
+      }
+      return true;
+    } catch (IOException e) {
+      LOG.warn("Existing repository is corrupt: " + e.getMessage(), e);
+      return false;
+    } finally {
+      treeWalk.release();
+      revWalk.release();
+    }
+  }
+
+  /**
+   * Open repository left in source directory by a previous run and bring it up to date, so that
+   * only objects missing locally are fetched.
+   *
+   * @return False if there is no repository that can be reused, in which case source directory is
+   *     emptied
+   */
+  private boolean reuseRepository(File sourceDirectory) throws GitAPIException, IOException {
+    if (!new File(sourceDirectory, Constants.DOT_GIT).isDirectory()) {
+      return false;
+    }
+    try {
+      git = Git.open(sourceDirectory);
+    } catch (IOException e) {
+      LOG.warn("Can't open existing repository in " + sourceDirectory, e);
+    }
+    if (git == null || !isReusable(git.getRepository())) {
+      if (git != null) {
+        git.close();
+        git = null;
+      }
+      LOG.info("Deleting existing repository in " + sourceDirectory + " for a fresh clone");
+      FileUtils.cleanDirectory(sourceDirectory);
+      return false;
+    }
+
+    LOG.info("Reusing existing repository in " + sourceDirectory);
+    if (!paths.isEmpty()) {
+      fetchAndExport(sourceDirectory, true);
+      return true;
+    }
+    executor.invokeCall(git.fetch().setRemote(REMOTE_NAME));
+    Repository repository = git.getRepository();
+    if (repository.getFullBranch().startsWith(Constants.R_HEADS)) {
+      // Hard reset also discards any local modification of files
+      String upstream = Constants.R_REMOTES + REMOTE_NAME + "/" + repository.getBranch();
+      Ref result = git.reset().setMode(ResetType.HARD).setRef(upstream).call();
+      LOG.info("Reset to " + upstream + " returned " + result);
+    }
+    return true;
+  }
+
   @Override
   public File initWorkingDirectory(File workingDirectory) throws GitAPIException, IOException {
+    if (singleBranch && branchOrCommit == null) {
+      throw new IllegalStateException(
+          "Single branch clone requires a branch name to be set with setBranchOrCommit().");
+    }
+
     // Create git repo local directory
     File sourceDirectory =
         new File(workingDirectory.getAbsolutePath() + SystemUtils.FILE_SEPARATOR + "gitrepo");
@@ -78,48 +362,37 @@ public class JGitSource implements FileSystemSource {
       LOG.info("Created GIT repo directory " + sourceDirectory);
     }
 
-    // Create local file for build-in SSH private key
-    File sshKey = null;
-    if (buildInSshIdentityUsed == Boolean.TRUE
-        || StringUtils.equalsIgnoreCase(sshIdentity, "buildin")) {
-      sshKey =
-          new File(
-              workingDirectory.getAbsolutePath()
-                  + SystemUtils.FILE_SEPARATOR
-                  + "gitconreader-ssh.key");
-      FileUtils.copyURLToFile(
-          getClass().getClassLoader().getResource("META-INF/gitcon/gitconreader-ssh.key"), sshKey);
-      LOG.info("Build-in SSH private key is copied into " + sshKey);
-
-    } else if (sshIdentity != null && !sshIdentity.equalsIgnoreCase("default")) {
-      sshKey = new File(sshIdentity);
-      LOG.info("About to use specified SSH key " + sshIdentity);
-    } else {
-      LOG.info("Default system SSH key will apply");
-    }
-
-    if (sshKey == null) {
-      executor = JGitCallExecutor.synchronize(JGitCallExecutor.direct());
-    } else if (!sshKey.canRead()) {
-      throw new IllegalStateException(
-          "Configured SSH private key " + sshKey + " is not accessible");
-    } else {
-      executor = JGitCallExecutor.withSshPrivateKey(sshKey.getAbsolutePath());
-      LOG.info("JGit executor is set with build-in SSH key " + sshKey);
+    executor =
+        JGitCallExecutor.create(
+            workingDirectory,
+            sshIdentity,
+            buildInSshIdentityUsed == Boolean.TRUE,
+            credentialsProvider);
+
+    if (reuseRepository(sourceDirectory)) {
+      return sourceDirectory;
+    }
+    if (!paths.isEmpty()) {
+      initPathFilteredRepository(sourceDirectory);
+      return sourceDirectory;
     }
 
     // Clone the repo
     final CloneCommand clone = Git.cloneRepository().setDirectory(sourceDirectory).setURI(repoUri);
-    if (credentialsProvider != null) {
-      clone.setCredentialsProvider(credentialsProvider);
+    if (singleBranch) {
+      String branchRef = Constants.R_HEADS + branchOrCommit;
+      clone
+          .setBranch(branchRef)
+          .setCloneAllBranches(false)
+          .setBranchesToClone(Collections.singletonList(branchRef));
     }
     LOG.info("Running git clone " + repoUri + " against " + sourceDirectory);
-    git = executor.invokeCall(clone::call);
+    git = executor.invokeCall(clone);
 
-    // If branch or commit is specified, call git checkout
-    if (branchOrCommit != null) {
+    // If branch or commit is specified, call git checkout, unless single branch clone did it
+    if (branchOrCommit != null && !singleBranch) {
       LOG.info("Calling git checkout " + branchOrCommit + " ...");
-      Ref result = executor.invokeCall(() -> git.checkout().setName(branchOrCommit).call());
+      Ref result = git.checkout().setName(branchOrCommit).call();
       LOG.info("Git checkout returned " + result);
     }
     return sourceDirectory;
@@ -136,6 +409,33 @@ public class JGitSource implements FileSystemSource {
     this.branchOrCommit = branch;
   }
 
+  /**
+   * Limit files that are written into working directory to given directories or files. When paths
+   * are specified, files are exported from Git objects instead of a full checkout, and a {@literal
+   * git fetch} replaces {@literal git pull} for updates.
+   *
+   * @param paths Paths of directories or files relative to the root of Git repository
+   */
+  public void setPaths(String... paths) {
+    List<String> normalized = new ArrayList<>();
+    for (String path : paths) {
+      path = StringUtils.strip(path.trim(), "/");
+      Validate.isTrue(!path.isEmpty(), "Path filter can't be empty or root.");
+      normalized.add(path);
+    }
+    this.paths = Collections.unmodifiableList(normalized);
+  }
+
+  /**
+   * Clone only the branch set by {@link #setBranchOrCommit(String)} instead of all branches. The
+   * branch must be a branch name rather than a commit when this option is on.
+   *
+   * @param singleBranch True to clone only one branch
+   */
+  public void setSingleBranch(boolean singleBranch) {
+    this.singleBranch = singleBranch;
+  }
+
   /**
    * Gitcon jar file comes with a build-in SSH private key for user {@literal gitconreader} in both
    * Github and BitBucket. This method tells {@link JGitSource} to use the build-in SSH key.
@@ -205,14 +505,31 @@ public class JGitSource implements FileSystemSource {
   }
 
   /**
-   * Update local repository by running a {@literal git pull} command
+   * Update local repository by running a {@literal git pull} command, or a {@literal git fetch}
+   * command if paths are specified. Neither command runs if remote branch still points to local
+   * HEAD. Changed files are computed by comparing trees of HEAD before and after the command.
    *
    * @throws GitAPIException Allows JGit exceptions
+   * @throws IOException If files can't be exported
    */
   @Override
-  public void updateWorkingDirectory(File workingDirectory) throws GitAPIException {
+  public ChangeEvent updateWorkingDirectory(File workingDirectory)
+      throws GitAPIException, IOException {
+    if (!isRemoteChanged()) {
+      LOG.info("Remote " + getTrackedRefName() + " is unchanged, skipping update.");
+      return null;
+    }
+    ObjectId head = git.getRepository().resolve(Constants.HEAD);
+    if (!paths.isEmpty()) {
+      LOG.info("Running a git fetch command ... ");
+      boolean changed = fetchAndExport(git.getRepository().getWorkTree(), false);
+      LOG.info("Fetch command " + (changed ? "updated files." : "found no change."));
+      return changed ? diff(head, git.getRepository().resolve(Constants.HEAD)) : null;
+    }
     LOG.info("Running a git pull command ... ");
-    PullResult result = executor.invokeCall(() -> git.pull().call());
+    PullResult result = executor.invokeCall(git.pull());
     LOG.info("Pull command returned " + result);
+    ObjectId newHead = git.getRepository().resolve(Constants.HEAD);
+    return newHead.equals(head) ? null : diff(head, newHead);
   }
 }
@@ -6,6 +6,7 @@ import org.apache.commons.collections.ExtendedProperties;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cyclopsgroup.gitcon.ExpressionUtils;
+import org.cyclopsgroup.gitcon.PropertiesCache;
 import org.cyclopsgroup.gitcon.Resource;
 import org.cyclopsgroup.gitcon.ResourceRepository;
 import org.springframework.beans.factory.BeanFactory;
@@ -21,6 +22,8 @@ public class GitconPropertiesBeanFactory implements FactoryBean<Properties> {
 
   private final String filePath;
 
+  private PropertiesCache propertiesCache;
+
   private final ResourceRepository repo;
 
   /**
@@ -34,7 +37,11 @@ public class GitconPropertiesBeanFactory implements FactoryBean<Properties> {
 
   @Override
   public Properties getObject() throws IOException {
-    Resource resource = repo.getResource(ExpressionUtils.populate(filePath));
+    String path = ExpressionUtils.populate(filePath);
+    if (propertiesCache != null) {
+      return propertiesCache.get(repo, path);
+    }
+    Resource resource = repo.getResource(path);
     LOG.info("Reading extended properties from file " + resource);
     return resource.readAsProperties();
   }
@@ -48,4 +55,12 @@ public class GitconPropertiesBeanFactory implements FactoryBean<Properties> {
   public boolean isSingleton() {
     return true;
   }
+
+  /**
+   * @param propertiesCache Cache that properties are read through, which can be shared by
+   *     factories
+   */
+  public void setPropertiesCache(PropertiesCache propertiesCache) {
+    this.propertiesCache = propertiesCache;
+  }
 }
@@ -49,4 +49,15 @@ public class JGitLocalResourceRepository extends JGitSource
   public Resource getResource(String filePath) {
     return localRepo.getResource(filePath);
   }
+
+  /**
+   * Persistent workspace requires the working directory to be given to constructor
+   *
+   * @param workspacePersistent True to keep working directory and reuse the clone in it across
+   *     restarts
+   * @see StaticLocalResourceRepository#setWorkspacePersistent(boolean)
+   */
+  public void setWorkspacePersistent(boolean workspacePersistent) {
+    localRepo.setWorkspacePersistent(workspacePersistent);
+  }
 }
@@ -0,0 +1,320 @@
+package org.cyclopsgroup.gitcon.webhook;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cyclopsgroup.gitcon.DynamicLocalResourceRepository;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A lightweight HTTP endpoint that accepts push events of Github or GitLab webhooks, and triggers
+ * update of repositories registered for the pushed repository and branch. Triggers of a target are
+ * delayed by a debounce period, so that a burst of pushes ends up in one update.
+ *
+ * <p>Github is identified by {@literal repository.full_name} and GitLab by {@literal
+ * project.path_with_namespace} in payload, both in form of {@literal owner/name}. When a secret is
+ * set, a request must either carry a valid {@literal X-Hub-Signature-256} header as Github does,
+ * or an {@literal X-Gitlab-Token} header equal to the secret as GitLab does. Without a secret
+ * anyone who reaches the endpoint can trigger updates, so a receiver that isn't behind a proxy
+ * which verifies requests should have one.
+ */
+public class WebhookReceiver implements Closeable {
+  /** A registered target of push events */
+  private class Target {
+    private final String branch;
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private final String repositoryName;
+    private final Runnable trigger;
+
+    private Target(String repositoryName, String branch, Runnable trigger) {
+      this.repositoryName = repositoryName;
+      this.branch = branch;
+      this.trigger = trigger;
+    }
+
+    private boolean matches(String pushedRepository, String pushedBranch) {
+      return repositoryName.equalsIgnoreCase(pushedRepository)
+          && (branch == null || branch.equals(pushedBranch));
+    }
+
+    private void schedule() {
+      if (!pending.compareAndSet(false, true)) {
+        return;
+      }
+      scheduler.schedule(
+          () -> {
+            pending.set(false);
+            try {
+              trigger.run();
+            } catch (RuntimeException e) {
+              LOG.error("Trigger of " + repositoryName + " failed: " + e.getMessage(), e);
+            }
+          },
+          debounceMillis,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private static final long DEFAULT_DEBOUNCE_MILLIS = 2000;
+
+  private static final String HEADER_GITHUB_SIGNATURE = "X-Hub-Signature-256";
+
+  private static final String HEADER_GITLAB_TOKEN = "X-Gitlab-Token";
+
+  private static final Log LOG = LogFactory.getLog(WebhookReceiver.class);
+
+  private static final int MAX_PAYLOAD_BYTES = 10 * 1024 * 1024;
+
+  private final InetSocketAddress address;
+
+  private final String contextPath;
+
+  private volatile long debounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+
+  private final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "gitcon-webhook-trigger");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private volatile String secret;
+
+  private HttpServer server;
+
+  private final List<Target> targets = new CopyOnWriteArrayList<>();
+
+  /**
+   * Listen to loopback address only, which suits a reverse proxy on the same host. Use {@link
+   * #WebhookReceiver(InetSocketAddress, String)} to listen to other addresses.
+   *
+   * @param port Port to listen to, or 0 for any free port
+   */
+  public WebhookReceiver(int port) {
+    this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), "/");
+  }
+
+  /**
+   * @param address Address to listen to
+   * @param contextPath Path of webhook endpoint
+   */
+  public WebhookReceiver(InetSocketAddress address, String contextPath) {
+    Validate.notNull(address, "Address can't be NULL.");
+    Validate.isTrue(
+        StringUtils.startsWith(contextPath, "/"), "Invalid context path " + contextPath);
+    this.address = address;
+    this.contextPath = contextPath;
+  }
+
+  private static String getString(JSONObject payload, String objectName, String field) {
+    JSONObject object = payload.optJSONObject(objectName);
+    return object == null ? null : StringUtils.trimToNull(object.optString(field));
+  }
+
+  private static byte[] readPayload(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+      out.write(buffer, 0, n);
+      if (out.size() > MAX_PAYLOAD_BYTES) {
+        return null;
+      }
+    }
+    return out.toByteArray();
+  }
+
+  private static void respond(HttpExchange exchange, int status, String message)
+      throws IOException {
+    byte[] body = message.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    if (server != null) {
+      server.stop(0);
+      server = null;
+    }
+    scheduler.shutdownNow();
+  }
+
+  /** @return The port server listens to, which is useful when it's started with port 0 */
+  public synchronized int getPort() {
+    Validate.isTrue(server != null, "Webhook receiver is not started.");
+    return server.getAddress().getPort();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
+        respond(exchange, 405, "Only POST is accepted.");
+        return;
+      }
+      byte[] payload = readPayload(exchange.getRequestBody());
+      if (payload == null) {
+        respond(exchange, 413, "Payload is too large.");
+        return;
+      }
+      if (!isAuthorized(exchange, payload)) {
+        LOG.warn("Rejected webhook request from " + exchange.getRemoteAddress());
+        respond(exchange, 401, "Signature or token doesn't match.");
+        return;
+      }
+
+      JSONObject event;
+      try {
+        event = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+      } catch (JSONException e) {
+        respond(exchange, 400, "Payload is not a JSON object.");
+        return;
+      }
+      String repositoryName = getString(event, "repository", "full_name");
+      if (repositoryName == null) {
+        repositoryName = getString(event, "project", "path_with_namespace");
+      }
+      String ref = StringUtils.trimToEmpty(event.optString("ref"));
+      if (repositoryName == null || !ref.startsWith("refs/heads/")) {
+        respond(exchange, 202, "Not a push event of branch, ignored.");
+        return;
+      }
+
+      String branch = StringUtils.removeStart(ref, "refs/heads/");
+      int triggered = 0;
+      for (Target target : targets) {
+        if (target.matches(repositoryName, branch)) {
+          target.schedule();
+          triggered++;
+        }
+      }
+      LOG.info("Push to " + repositoryName + ":" + branch + " triggered " + triggered + " updates");
+      respond(exchange, triggered == 0 ? 202 : 200, "Triggered " + triggered + " updates.");
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private boolean isAuthorized(HttpExchange exchange, byte[] payload) {
+    String key = secret;
+    if (key == null) {
+      return true;
+    }
+    String token = exchange.getRequestHeaders().getFirst(HEADER_GITLAB_TOKEN);
+    if (token != null) {
+      return MessageDigest.isEqual(
+          token.getBytes(StandardCharsets.UTF_8), key.getBytes(StandardCharsets.UTF_8));
+    }
+    String signature = exchange.getRequestHeaders().getFirst(HEADER_GITHUB_SIGNATURE);
+    if (signature == null || !signature.startsWith("sha256=")) {
+      return false;
+    }
+    try {
+      Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+      StringBuilder expected = new StringBuilder("sha256=");
+      for (byte b : mac.doFinal(payload)) {
+        expected.append(String.format("%02x", b));
+      }
+      return MessageDigest.isEqual(
+          expected.toString().getBytes(StandardCharsets.UTF_8),
+          signature.getBytes(StandardCharsets.UTF_8));
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("HMAC-SHA256 is not available.", e);
+    }
+  }
+
+  /**
+   * Register a repository to update when the given repository and branch is pushed
+   *
+   * @param repositoryName Name of pushed repository in form of {@literal owner/name}
+   * @param branch Name of pushed branch, or NULL for any branch
+   * @param repository Repository to update
+   */
+  public void register(
+      String repositoryName, String branch, DynamicLocalResourceRepository repository) {
+    Validate.notNull(repository, "Repository can't be NULL.");
+    register(repositoryName, branch, repository::requestUpdate);
+  }
+
+  /**
+   * Register a trigger to run when the given repository and branch is pushed
+   *
+   * @param repositoryName Name of pushed repository in form of {@literal owner/name}
+   * @param branch Name of pushed branch, or NULL for any branch
+   * @param trigger Trigger that starts update. It's called from one thread for all triggers and
+   *     should return quickly.
+   */
+  public void register(String repositoryName, String branch, Runnable trigger) {
+    Validate.notEmpty(repositoryName, "Repository name can't be empty.");
+    Validate.notNull(trigger, "Trigger can't be NULL.");
+    targets.add(new Target(repositoryName, branch, trigger));
+  }
+
+  /**
+   * A trigger runs after the debounce period since the first push that matches it, and pushes in
+   * between are covered by the same trigger. The default period is {@value
+   * #DEFAULT_DEBOUNCE_MILLIS} milliseconds.
+   *
+   * @param debounceMillis Debounce period in milliseconds
+   */
+  public void setDebounceMillis(long debounceMillis) {
+    Validate.isTrue(debounceMillis >= 0, "Invalid debounce period " + debounceMillis);
+    this.debounceMillis = debounceMillis;
+  }
+
+  /** @param secret Secret configured in webhook of Github or GitLab, or NULL to accept anyone */
+  public void setSecret(String secret) {
+    this.secret = StringUtils.trimToNull(secret);
+  }
+
+  /**
+   * Start listening to webhook requests
+   *
+   * @throws IOException If server can't listen to the address
+   */
+  public synchronized void start() throws IOException {
+    Validate.isTrue(server == null, "Webhook receiver is already started.");
+    server = HttpServer.create(address, 0);
+    server.createContext(contextPath, this::handle);
+    server.setExecutor(null);
+    server.start();
+    List<String> names = new ArrayList<>();
+    for (Target target : targets) {
+      names.add(target.repositoryName + ":" + StringUtils.defaultString(target.branch, "*"));
+    }
+    LOG.info("Webhook receiver listens to " + server.getAddress() + contextPath + " for " + names);
+    if (secret == null) {
+      LOG.warn(
+          "Webhook receiver at "
+              + server.getAddress()
+              + " has no secret and accepts requests from anyone who can reach it.");
+    }
+  }
+}
@@ -0,0 +1,2 @@
+/** Classes in this package let repositories update as soon as changes are pushed */
+package org.cyclopsgroup.gitcon.webhook;
@@ -0,0 +1,97 @@
+package org.cyclopsgroup.gitcon;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CoalescingResourceRepositoryTest {
+  private class SlowResource extends Resource {
+    @Override
+    public void read(CheckedStreamConsumer consumer) throws IOException {
+      reads.incrementAndGet();
+      started.countDown();
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      consumer.consume(new ByteArrayInputStream("a=1".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public Resource reference(String relativePath) {
+      return this;
+    }
+  }
+
+  private ExecutorService executor;
+
+  private final AtomicInteger reads = new AtomicInteger();
+
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  private CoalescingResourceRepository repo;
+
+  private final CountDownLatch started = new CountDownLatch(1);
+
+  @Before
+  public void setUpRepository() {
+    Resource resource = new SlowResource();
+    repo = new CoalescingResourceRepository(path -> resource);
+    executor = Executors.newFixedThreadPool(8);
+  }
+
+  @After
+  public void tearDownExecutor() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testConcurrentReadsShareOneLoad() throws Exception {
+    List<Future<String>> results = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      results.add(
+          executor.submit(
+              () -> {
+                String[] content = new String[1];
+                repo.getResource("a.properties")
+                    .read(in -> content[0] = IOUtils.toString(in, StandardCharsets.UTF_8));
+                return content[0];
+              }));
+    }
+    // Load stays in flight until released, so the other readers can only join it
+    assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+    long deadline = System.currentTimeMillis() + 10000L;
+    while (repo.getCoalescedReadCount() < 7 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10L);
+    }
+    release.countDown();
+    for (Future<String> result : results) {
+      assertThat(result.get()).isEqualTo("a=1");
+    }
+    assertThat(reads.get()).isEqualTo(1);
+    assertThat(repo.getCoalescedReadCount()).isEqualTo(7L);
+  }
+
+  @Test
+  public void testSequentialReadsLoadAgain() throws IOException {
+    release.countDown();
+    assertThat(repo.getResource("a.properties").readAsProperties()).containsEntry("a", "1");
+    assertThat(repo.getResource("a.properties").readAsProperties()).containsEntry("a", "1");
+    assertThat(reads.get()).isEqualTo(2);
+  }
+}
@@ -0,0 +1,60 @@
+package org.cyclopsgroup.gitcon;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.time.Duration;
+import java.util.Properties;
+import org.junit.Test;
+
+public class ConfigSnapshotTest {
+  private static ConfigSnapshot snapshot(String... pairs) {
+    Properties properties = new Properties();
+    for (int i = 0; i < pairs.length; i += 2) {
+      properties.setProperty(pairs[i], pairs[i + 1]);
+    }
+    return ConfigSnapshot.of(properties);
+  }
+
+  @Test
+  public void testTypedValues() {
+    ConfigSnapshot snapshot =
+        snapshot("n", " 42 ", "b", "yes", "t", "30s", "iso", "PT1M", "l", "a, b,,c", "big", "1e3");
+    assertThat(snapshot.getInt("n", 0)).isEqualTo(42);
+    assertThat(snapshot.getLong("n", 0)).isEqualTo(42L);
+    assertThat(snapshot.getBoolean("b", false)).isTrue();
+    assertThat(snapshot.getDuration("t", null)).isEqualTo(Duration.ofSeconds(30));
+    assertThat(snapshot.getDuration("n", null)).isEqualTo(Duration.ofMillis(42));
+    assertThat(snapshot.getDuration("iso", null)).isEqualTo(Duration.ofMinutes(1));
+    assertThat(snapshot.getList("l")).containsExactly("a", "b", "c").inOrder();
+    assertThat(snapshot.getString("big")).isEqualTo("1e3");
+  }
+
+  @Test
+  public void testMissingValuesFallBackToDefaults() {
+    ConfigSnapshot snapshot = ConfigSnapshot.empty();
+    assertThat(snapshot.getInt("n", 7)).isEqualTo(7);
+    assertThat(snapshot.getBoolean("b", true)).isTrue();
+    assertThat(snapshot.getString("s", "x")).isEqualTo("x");
+    assertThat(snapshot.getList("l")).isEmpty();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIntegerOverflowIsRejected() {
+    snapshot("n", "9999999999").getInt("n", 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidBooleanIsRejected() {
+    snapshot("b", "maybe").getBoolean("b", false);
+  }
+
+  @Test
+  public void testLongDurationIsExact() {
+    assertThat(snapshot("t", "200000d").getDuration("t", null)).isEqualTo(Duration.ofDays(200000));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDurationOverflowIsRejected() {
+    snapshot("t", "9223372036854775807d").getDuration("t", null);
+  }
+}
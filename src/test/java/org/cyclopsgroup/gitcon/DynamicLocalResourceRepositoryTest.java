@@ -1,9 +1,21 @@
 package org.cyclopsgroup.gitcon;
 
+import static com.google.common.truth.Truth.assertThat;
+
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
 import org.jmock.Expectations;
 import org.jmock.Mockery;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -33,15 +45,178 @@ public class DynamicLocalResourceRepositoryTest {
 
   @Test
   public void testInitAndUpdate() throws Exception {
-    repo.setUpdateIntervalSeconds(5);
+    repo.setUpdateIntervalSeconds(1);
+    repo.setJitterRatio(0);
+    CountDownLatch updated = new CountDownLatch(1);
     mock.checking(
         new Expectations() {
           {
             oneOf(source).initWorkingDirectory(workingDirectory);
+            will(
+                new CustomAction("Create source directory") {
+                  @Override
+                  public Object invoke(Invocation invocation) throws IOException {
+                    File sourceDirectory = new File(workingDirectory, "source");
+                    FileUtils.forceMkdir(sourceDirectory);
+                    FileUtils.write(
+                        new File(sourceDirectory, "a.properties"), "a=1", StandardCharsets.UTF_8);
+                    return sourceDirectory;
+                  }
+                });
+            allowing(source).getRemoteHost();
+            will(returnValue("localhost"));
             atLeast(1).of(source).updateWorkingDirectory(workingDirectory);
+            will(
+                new CustomAction("Count update") {
+                  @Override
+                  public Object invoke(Invocation invocation) {
+                    updated.countDown();
+                    return null;
+                  }
+                });
           }
         });
     repo.init();
-    Thread.sleep(8000L);
+    assertThat(repo.getResource("a.properties").readAsProperties()).containsEntry("a", "1");
+    assertThat(updated.await(10, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  public void testIntervalBacksOffAndCircuitOpensOnFailures() {
+    repo.setUpdateIntervalSeconds(1);
+    repo.setMaxUpdateIntervalSeconds(100);
+    for (int expected : new int[] {2, 4, 8, 16}) {
+      repo.adaptInterval(false, true);
+      assertThat(repo.getCurrentUpdateIntervalSeconds()).isEqualTo(expected);
+      assertThat(repo.isCircuitOpen()).isFalse();
+    }
+    repo.adaptInterval(false, true);
+    assertThat(repo.getCurrentUpdateIntervalSeconds()).isEqualTo(100);
+    assertThat(repo.isCircuitOpen()).isTrue();
+    repo.adaptInterval(false, true);
+    assertThat(repo.getCurrentUpdateIntervalSeconds()).isEqualTo(100);
+
+    repo.adaptInterval(false, false);
+    assertThat(repo.getCurrentUpdateIntervalSeconds()).isEqualTo(1);
+    assertThat(repo.isCircuitOpen()).isFalse();
+  }
+
+  @Test
+  public void testIntervalBacksOffWhileSourceIsUnchanged() {
+    repo.setUpdateIntervalSeconds(1);
+    repo.setMaxUpdateIntervalSeconds(4);
+    repo.adaptInterval(true, false);
+    assertThat(repo.getCurrentUpdateIntervalSeconds()).isEqualTo(1);
+    for (int expected : new int[] {2, 4, 4}) {
+      repo.adaptInterval(false, false);
+      assertThat(repo.getCurrentUpdateIntervalSeconds()).isEqualTo(expected);
+    }
+    assertThat(repo.isCircuitOpen()).isFalse();
+
+    repo.adaptInterval(true, false);
+    assertThat(repo.getCurrentUpdateIntervalSeconds()).isEqualTo(1);
+  }
+
+  @Test
+  public void testListenerIsNotifiedOfChanges() throws Exception {
+    repo.setUpdateIntervalSeconds(1);
+    repo.setJitterRatio(0);
+    File sourceDirectory = new File(workingDirectory, "source");
+    FileUtils.forceMkdir(sourceDirectory);
+    ChangeEvent event =
+        new ChangeEvent(
+            "a",
+            "b",
+            Arrays.asList("new.properties"),
+            Arrays.asList("a.properties"),
+            Collections.<String>emptyList());
+    mock.checking(
+        new Expectations() {
+          {
+            oneOf(source).initWorkingDirectory(workingDirectory);
+            will(returnValue(sourceDirectory));
+            allowing(source).getRemoteHost();
+            will(returnValue(null));
+            oneOf(source).updateWorkingDirectory(workingDirectory);
+            will(returnValue(event));
+            allowing(source).updateWorkingDirectory(workingDirectory);
+            will(returnValue(null));
+          }
+        });
+    List<ChangeEvent> events = new CopyOnWriteArrayList<>();
+    CountDownLatch notified = new CountDownLatch(1);
+    repo.addChangeListener(
+        e -> {
+          events.add(e);
+          notified.countDown();
+        });
+    repo.init();
+    assertThat(notified.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(events).containsExactly(event);
+    assertThat(event.affects("a.properties")).isTrue();
+    assertThat(event.affects("b.properties")).isFalse();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPersistentWorkspaceRequiresWorkingDirectory() {
+    new DynamicLocalResourceRepository(source).setWorkspacePersistent(true);
+  }
+
+  @Test
+  public void testUpdatePublishesChangesOnTopOfPreviousSnapshot() throws Exception {
+    repo.setUpdateIntervalSeconds(3600);
+    File sourceDirectory = new File(workingDirectory, "source");
+    mock.checking(
+        new Expectations() {
+          {
+            oneOf(source).initWorkingDirectory(workingDirectory);
+            will(
+                new CustomAction("Create source directory") {
+                  @Override
+                  public Object invoke(Invocation invocation) throws IOException {
+                    FileUtils.write(
+                        new File(sourceDirectory, "a.properties"), "a=1", StandardCharsets.UTF_8);
+                    FileUtils.write(
+                        new File(sourceDirectory, "b.properties"), "b=1", StandardCharsets.UTF_8);
+                    FileUtils.write(
+                        new File(sourceDirectory, "dir/c.properties"),
+                        "c=1",
+                        StandardCharsets.UTF_8);
+                    return sourceDirectory;
+                  }
+                });
+            allowing(source).getRemoteHost();
+            will(returnValue(null));
+            oneOf(source).updateWorkingDirectory(workingDirectory);
+            will(
+                new CustomAction("Change files") {
+                  @Override
+                  public Object invoke(Invocation invocation) throws IOException {
+                    FileUtils.write(
+                        new File(sourceDirectory, "a.properties"), "a=2", StandardCharsets.UTF_8);
+                    FileUtils.forceDelete(new File(sourceDirectory, "b.properties"));
+                    return new ChangeEvent(
+                        "1",
+                        "2",
+                        Collections.<String>emptyList(),
+                        Arrays.asList("a.properties"),
+                        Arrays.asList("b.properties"));
+                  }
+                });
+            allowing(source).updateWorkingDirectory(workingDirectory);
+            will(returnValue(null));
+          }
+        });
+    CountDownLatch updated = new CountDownLatch(1);
+    repo.addChangeListener(event -> updated.countDown());
+    repo.init();
+    Resource before = repo.getResource("a.properties");
+    repo.requestUpdate();
+    assertThat(updated.await(10, TimeUnit.SECONDS)).isTrue();
+
+    assertThat(before.readAsProperties()).containsEntry("a", "1");
+    assertThat(repo.getResource("a.properties").readAsProperties()).containsEntry("a", "2");
+    assertThat(repo.getResource("b.properties").getVersion()).isNull();
+    assertThat(repo.getResource("dir/c.properties").readAsProperties()).containsEntry("c", "1");
   }
 }
@@ -0,0 +1,61 @@
+package org.cyclopsgroup.gitcon;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class ExpressionTemplateTest {
+  private final Map<String, String> variables = new HashMap<>();
+
+  private String resolve(String template) {
+    return ExpressionTemplate.compile(template).resolve(VariableResolver.of(variables));
+  }
+
+  @Test
+  public void testDefaultValues() {
+    variables.put("x", "1");
+    assertThat(resolve("a${x}b${y:def:1}c")).isEqualTo("a1bdef:1c");
+    assertThat(resolve("${y:${x}/d}")).isEqualTo("1/d");
+  }
+
+  @Test
+  public void testNestedName() {
+    variables.put("env", "prod");
+    variables.put("config.prod", "/etc/prod");
+    assertThat(resolve("${config.${env}}")).isEqualTo("/etc/prod");
+  }
+
+  @Test
+  public void testEscapingAndStrayBraces() {
+    variables.put("x", "1");
+    assertThat(resolve("$${x} is ${x}")).isEqualTo("${x} is 1");
+    assertThat(resolve("{}${x}}")).isEqualTo("{}1}");
+    assertThat(ExpressionTemplate.compile("no expression").isConstant()).isTrue();
+  }
+
+  @Test
+  public void testChainOfResolvers() {
+    variables.put("x", "1");
+    Map<String, String> fallback = new HashMap<>();
+    fallback.put("x", "2");
+    fallback.put("y", "3");
+    assertThat(
+            ExpressionTemplate.compile("${x}${y}")
+                .resolve(
+                    VariableResolver.chain(
+                        VariableResolver.of(variables), VariableResolver.of(fallback))))
+        .isEqualTo("13");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnclosedExpression() {
+    ExpressionTemplate.compile("${a:${b}");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUndefinedVariable() {
+    resolve("${undefined}");
+  }
+}
@@ -0,0 +1,108 @@
+package org.cyclopsgroup.gitcon;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileSystemResourceRepositoryTest {
+  private static final List<String> NO_PATHS = Collections.emptyList();
+
+  /** Merge events received so far until they include given path, or a deadline passes */
+  private static ChangeEvent awaitEvent(List<ChangeEvent> events, String path)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 30000L;
+    while (true) {
+      ChangeEvent merged = new ChangeEvent(null, null, NO_PATHS, NO_PATHS, NO_PATHS);
+      for (ChangeEvent event : events) {
+        merged = merged.merge(event);
+      }
+      if (merged.affects(path) || System.currentTimeMillis() > deadline) {
+        return merged;
+      }
+      Thread.sleep(50L);
+    }
+  }
+
+  private File directory;
+
+  private FileSystemResourceRepository repo;
+
+  @Before
+  public void setUpRepository() throws IOException {
+    directory = StaticLocalResourceRepository.createTempDirectory();
+    FileUtils.write(new File(directory, "conf/a.properties"), "a=1", StandardCharsets.UTF_8);
+    repo = new FileSystemResourceRepository(directory);
+  }
+
+  @After
+  public void tearDownRepository() throws IOException {
+    repo.close();
+    FileUtils.deleteDirectory(directory);
+  }
+
+  @Test
+  public void testWatchCoalescesChangesUnderPrefix() throws Exception {
+    List<ChangeEvent> confEvents = new CopyOnWriteArrayList<>();
+    List<ChangeEvent> otherEvents = new CopyOnWriteArrayList<>();
+    repo.watch("conf/", confEvents::add);
+    repo.watch("other", otherEvents::add);
+
+    FileUtils.write(new File(directory, "conf/a.properties"), "a=2", StandardCharsets.UTF_8);
+    FileUtils.write(new File(directory, "conf/b.properties"), "b=2", StandardCharsets.UTF_8);
+    FileUtils.write(new File(directory, "top.properties"), "c=3", StandardCharsets.UTF_8);
+    // A file system may report the changes in more than one batch
+    ChangeEvent confEvent = awaitEvent(confEvents, "conf/b.properties");
+    assertThat(confEvent.getAddedPaths()).containsExactly("conf/b.properties");
+    assertThat(confEvent.getModifiedPaths()).containsExactly("conf/a.properties");
+    assertThat(otherEvents).isEmpty();
+  }
+
+  @Test
+  public void testClosedWatchIsNotNotified() throws Exception {
+    List<ChangeEvent> events = new CopyOnWriteArrayList<>();
+    Closeable watch = repo.watch("conf/a.properties", events::add);
+    watch.close();
+    CountDownLatch changed = new CountDownLatch(1);
+    repo.watch("conf/a.properties", event -> changed.countDown());
+    FileUtils.write(new File(directory, "conf/a.properties"), "a=2", StandardCharsets.UTF_8);
+    assertThat(changed.await(30, TimeUnit.SECONDS)).isTrue();
+    assertThat(events).isEmpty();
+  }
+
+  @Test
+  public void testReadAsByteBuffer() throws IOException {
+    Resource resource = repo.getResource("conf/a.properties");
+    ByteBuffer buffer = resource.readAsByteBuffer();
+    assertThat(resource.size()).isEqualTo(3L);
+    assertThat(buffer.isReadOnly()).isTrue();
+    assertThat(StandardCharsets.UTF_8.decode(buffer).toString()).isEqualTo("a=1");
+  }
+
+  @Test
+  public void testReadIfChanged() throws IOException {
+    Resource resource = repo.getResource("conf/a.properties");
+    ResourceMetadata metadata = resource.getMetadata();
+    assertThat(metadata.getSize()).isEqualTo(3L);
+    assertThat(metadata.getLastModified()).isGreaterThan(0L);
+    assertThat(metadata.getVersion()).isEqualTo(resource.getVersion());
+
+    List<String> reads = new CopyOnWriteArrayList<>();
+    assertThat(resource.readIfChanged(metadata.getVersion(), in -> reads.add("read"))).isFalse();
+    FileUtils.write(new File(directory, "conf/a.properties"), "a=10", StandardCharsets.UTF_8);
+    assertThat(resource.readIfChanged(metadata.getVersion(), in -> reads.add("read"))).isTrue();
+    assertThat(reads).hasSize(1);
+  }
+}
@@ -0,0 +1,124 @@
+package org.cyclopsgroup.gitcon;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LiveConfigSnapshotTest {
+  /** Source that writes one queued file into working directory with each update */
+  private static class QueuedChangeSource implements FileSystemSource {
+    private final BlockingQueue<String[]> changes = new LinkedBlockingQueue<>();
+
+    private File directory;
+
+    @Override
+    public File initWorkingDirectory(File workingDirectory) throws IOException {
+      directory = new File(workingDirectory, "source");
+      write("app.properties", "include=common/base.properties\nname=app");
+      write("common/base.properties", "timeout=10s\nretries=1");
+      write("other.properties", "x=1");
+      return directory;
+    }
+
+    @Override
+    public ChangeEvent updateWorkingDirectory(File workingDirectory) throws IOException {
+      String[] change = changes.poll();
+      if (change == null) {
+        return null;
+      }
+      write(change[0], change[1]);
+      return new ChangeEvent(
+          null,
+          null,
+          Collections.<String>emptyList(),
+          Arrays.asList(change[0]),
+          Collections.<String>emptyList());
+    }
+
+    private void write(String path, String content) throws IOException {
+      FileUtils.write(new File(directory, path), content, StandardCharsets.UTF_8);
+    }
+  }
+
+  private LiveConfigSnapshot live;
+
+  private DynamicLocalResourceRepository repo;
+
+  private QueuedChangeSource source;
+
+  @Before
+  public void setUp() throws Exception {
+    source = new QueuedChangeSource();
+    repo =
+        new DynamicLocalResourceRepository(
+            DynamicLocalResourceRepository.createTempDirectory(), source);
+    repo.setUpdateIntervalSeconds(3600);
+    repo.init();
+    live = new LiveConfigSnapshot(repo, "app.properties");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    live.close();
+    repo.close();
+  }
+
+  private ConfigSnapshot awaitChange(ConfigSnapshot previous) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000L;
+    while (live.get() == previous && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20L);
+    }
+    return live.get();
+  }
+
+  @Test
+  public void testUpdateOfIncludedFileIsPublished() throws Exception {
+    ConfigSnapshot initial = live.get();
+    assertThat(initial.getInt("retries", 0)).isEqualTo(1);
+
+    source.changes.add(new String[] {"common/base.properties", "timeout=10s\nretries=3"});
+    repo.requestUpdate();
+    ConfigSnapshot updated = awaitChange(initial);
+
+    assertThat(updated).isNotSameInstanceAs(initial);
+    assertThat(updated.getInt("retries", 0)).isEqualTo(3);
+    assertThat(updated.getString("name")).isEqualTo("app");
+    assertThat(initial.getInt("retries", 0)).isEqualTo(1);
+  }
+
+  @Test
+  public void testUpdatesAfterFirstOneArePublished() throws Exception {
+    ConfigSnapshot snapshot = live.get();
+    for (int i = 2; i <= 3; i++) {
+      source.changes.add(new String[] {"app.properties", "include=common/base.properties\nv=" + i});
+      repo.requestUpdate();
+      snapshot = awaitChange(snapshot);
+      assertThat(snapshot.getInt("v", 0)).isEqualTo(i);
+      assertThat(snapshot.getInt("retries", 0)).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void testUnrelatedChangeKeepsSnapshot() throws Exception {
+    ConfigSnapshot initial = live.get();
+    // Delivered after the snapshot handled the same change, since it watched first
+    CountDownLatch delivered = new CountDownLatch(1);
+    repo.watch("", event -> delivered.countDown());
+    source.changes.add(new String[] {"other.properties", "x=2"});
+    repo.requestUpdate();
+    assertThat(delivered.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(live.get()).isSameInstanceAs(initial);
+  }
+}
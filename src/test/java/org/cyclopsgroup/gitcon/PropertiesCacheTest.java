@@ -0,0 +1,129 @@
+package org.cyclopsgroup.gitcon;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PropertiesCacheTest {
+  /** Source that reports one queued path as changed with each update */
+  private static class QueuedChangeSource implements FileSystemSource {
+    private final BlockingQueue<String> changes = new LinkedBlockingQueue<>();
+
+    private final File directory;
+
+    private QueuedChangeSource(File directory) {
+      this.directory = directory;
+    }
+
+    @Override
+    public File initWorkingDirectory(File workingDirectory) {
+      return directory;
+    }
+
+    @Override
+    public ChangeEvent updateWorkingDirectory(File workingDirectory) {
+      String change = changes.poll();
+      return change == null
+          ? null
+          : new ChangeEvent(
+              null,
+              null,
+              Collections.<String>emptyList(),
+              Arrays.asList(change),
+              Collections.<String>emptyList());
+    }
+  }
+
+  private File directory;
+
+  private FileSystemResourceRepository repo;
+
+  @Before
+  public void setUpRepository() throws IOException {
+    directory = StaticLocalResourceRepository.createTempDirectory();
+    FileUtils.write(new File(directory, "base.properties"), "a=1", StandardCharsets.UTF_8);
+    FileUtils.write(
+        new File(directory, "app.properties"),
+        "include=base.properties\nb=2",
+        StandardCharsets.UTF_8);
+    repo = new FileSystemResourceRepository(directory);
+  }
+
+  @After
+  public void tearDownRepository() throws IOException {
+    repo.close();
+    FileUtils.deleteDirectory(directory);
+  }
+
+  @Test
+  public void testUnchangedFilesAreServedFromCache() throws IOException {
+    PropertiesCache cache = new PropertiesCache();
+    assertThat(cache.get(repo, "app.properties")).containsExactly("a", "1", "b", "2");
+    assertThat(cache.get(repo, "app.properties")).containsExactly("a", "1", "b", "2");
+    assertThat(cache.getHitCount()).isEqualTo(1);
+    assertThat(cache.getMissCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testChangeOfIncludedFileIsSeen() throws IOException {
+    PropertiesCache cache = new PropertiesCache();
+    cache.get(repo, "app.properties");
+    FileUtils.write(new File(directory, "base.properties"), "a=11", StandardCharsets.UTF_8);
+    assertThat(cache.get(repo, "app.properties")).containsEntry("a", "11");
+    assertThat(cache.getMissCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void testCacheIsBounded() throws IOException {
+    PropertiesCache cache = new PropertiesCache(300);
+    cache.get(repo, "app.properties");
+    cache.get(repo, "base.properties");
+    assertThat(cache.getEvictionCount()).isEqualTo(1);
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(cache.getWeightBytes()).isAtMost(300L);
+  }
+
+  @Test
+  public void testUnchangedFilesAreServedFromCacheAcrossSnapshots() throws Exception {
+    QueuedChangeSource source = new QueuedChangeSource(directory);
+    DynamicLocalResourceRepository dynamic =
+        new DynamicLocalResourceRepository(
+            DynamicLocalResourceRepository.createTempDirectory(), source);
+    dynamic.setUpdateIntervalSeconds(3600);
+    dynamic.init();
+    Semaphore updates = new Semaphore(0);
+    dynamic.addChangeListener(event -> updates.release());
+    try {
+      PropertiesCache cache = new PropertiesCache();
+      cache.get(dynamic, "app.properties");
+
+      FileUtils.write(new File(directory, "other.properties"), "c=3", StandardCharsets.UTF_8);
+      source.changes.add("other.properties");
+      dynamic.requestUpdate();
+      assertThat(updates.tryAcquire(10, TimeUnit.SECONDS)).isTrue();
+      assertThat(cache.get(dynamic, "app.properties")).containsExactly("a", "1", "b", "2");
+      assertThat(cache.getHitCount()).isEqualTo(1);
+
+      FileUtils.write(new File(directory, "base.properties"), "a=11", StandardCharsets.UTF_8);
+      source.changes.add("base.properties");
+      dynamic.requestUpdate();
+      assertThat(updates.tryAcquire(10, TimeUnit.SECONDS)).isTrue();
+      assertThat(cache.get(dynamic, "app.properties")).containsEntry("a", "11");
+      assertThat(cache.getMissCount()).isEqualTo(2);
+    } finally {
+      dynamic.close();
+    }
+  }
+}
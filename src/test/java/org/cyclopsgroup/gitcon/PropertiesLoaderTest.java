@@ -0,0 +1,132 @@
+package org.cyclopsgroup.gitcon;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PropertiesLoaderTest {
+  private class MemoryResource extends Resource {
+    private final String path;
+
+    private MemoryResource(String path) {
+      this.path = path;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof MemoryResource && ((MemoryResource) o).path.equals(path);
+    }
+
+    @Override
+    public int hashCode() {
+      return path.hashCode();
+    }
+
+    @Override
+    public void read(CheckedStreamConsumer consumer) throws IOException {
+      String content = files.get(path);
+      if (content == null) {
+        throw new FileNotFoundException(path);
+      }
+      reads.merge(path, 1, Integer::sum);
+      consumer.consume(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public Resource reference(String relativePath) {
+      return new MemoryResource(relativePath);
+    }
+
+    @Override
+    public String toString() {
+      return path;
+    }
+  }
+
+  private final Map<String, String> files = new HashMap<>();
+
+  private PropertiesLoader loader;
+
+  // Async loads read files concurrently
+  private final Map<String, Integer> reads = new ConcurrentHashMap<>();
+
+  @Before
+  public void setUpLoader() {
+    loader = new PropertiesLoader();
+    files.put("base", "a=base\nb=base");
+    files.put("left", "include=base\na=left");
+    files.put("right", "include=base\nb=right");
+    files.put("top", "include=left,right\nc=top");
+  }
+
+  @Test
+  public void testDiamondIsReadOnce() throws IOException {
+    Properties props = loader.load(new MemoryResource("top"));
+    // Later includes override earlier ones, and the including file overrides all
+    assertThat(props).containsExactly("a", "base", "b", "right", "c", "top");
+    assertThat(reads).containsEntry("base", 1);
+  }
+
+  @Test
+  public void testCycleIsDetected() throws IOException {
+    files.put("base", "include=top\na=base");
+    try {
+      loader.load(new MemoryResource("top"));
+      fail("Cycle should fail the load");
+    } catch (IOException e) {
+      assertThat(e).hasMessageThat().contains("Include cycle");
+    }
+  }
+
+  @Test
+  public void testInvalidateReloadsOnlyChangedFile() throws IOException {
+    loader.load(new MemoryResource("top"));
+    loader.load(new MemoryResource("right"));
+    files.put("left", "include=base\na=changed");
+
+    assertThat(loader.invalidate(new MemoryResource("left")))
+        .containsExactly(new MemoryResource("left"), new MemoryResource("top"));
+    assertThat(loader.load(new MemoryResource("left"))).containsEntry("a", "changed");
+    assertThat(loader.load(new MemoryResource("top"))).containsEntry("c", "top");
+    assertThat(reads).containsExactly("base", 1, "left", 2, "right", 1, "top", 1);
+  }
+
+  @Test
+  public void testValuesAreInterpolatedAcrossIncludes() throws IOException {
+    files.put("base", "url=http://${host}:${port:80}/${path}\nhost=base");
+    files.put("top", "include=base\nhost=top\npath=${name}");
+    loader.setVariableResolver(name -> name.equals("name") ? "api" : null);
+    assertThat(loader.load(new MemoryResource("top")))
+        .containsExactly("url", "http://top:80/api", "host", "top", "path", "api");
+  }
+
+  @Test
+  public void testInterpolationCycleIsDetected() throws IOException {
+    files.put("top", "a=${b}\nb=${c}\nc=${a}");
+    loader.setVariableResolver(VariableResolver.NONE);
+    try {
+      loader.load(new MemoryResource("top"));
+      fail("Cycle should fail the load");
+    } catch (IOException e) {
+      assertThat(e).hasMessageThat().contains("Variable cycle");
+    }
+  }
+
+  @Test
+  public void testAsyncLoadReadsEachFileOnce() throws Exception {
+    Properties props =
+        loader.loadAsync(new MemoryResource("top"), ResourceExecutors.getDefault()).get();
+    assertThat(props).containsExactly("a", "base", "b", "right", "c", "top");
+    assertThat(reads).containsExactly("base", 1, "left", 1, "right", 1, "top", 1);
+  }
+}
@@ -0,0 +1,103 @@
+package org.cyclopsgroup.gitcon;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UpdateSchedulerTest {
+  private final AtomicInteger maxRunning = new AtomicInteger();
+
+  /** Tasks keep running until it's released */
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  private final AtomicInteger running = new AtomicInteger();
+
+  private UpdateScheduler scheduler;
+
+  private void awaitQueueDepth(int depth) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000L;
+    while (scheduler.getQueueDepth() != depth && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10L);
+    }
+  }
+
+  private Runnable newTask(CountDownLatch started, CountDownLatch done) {
+    return () -> {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      started.countDown();
+      try {
+        release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        running.decrementAndGet();
+        done.countDown();
+      }
+    };
+  }
+
+  @Before
+  public void setUpScheduler() {
+    scheduler = new UpdateScheduler(4, 2);
+  }
+
+  @After
+  public void closeScheduler() {
+    scheduler.close();
+  }
+
+  @Test
+  public void testUpdatesOfSameHostAreCapped() throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(2);
+    CountDownLatch done = new CountDownLatch(6);
+    for (int i = 0; i < 6; i++) {
+      scheduler
+          .register("repo" + i, "github.com", newTask(started, done))
+          .schedule(0, TimeUnit.SECONDS);
+    }
+    // Nothing finishes before release, so the rest of due updates can only wait in queue
+    assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+    awaitQueueDepth(4);
+    assertThat(scheduler.getRegistrationCount()).isEqualTo(6);
+    assertThat(scheduler.getQueueDepth()).isEqualTo(4);
+    assertThat(running.get()).isEqualTo(2);
+
+    release.countDown();
+    assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(maxRunning.get()).isEqualTo(2);
+    assertThat(scheduler.getQueueDepth()).isEqualTo(0);
+  }
+
+  @Test
+  public void testUpdatesOfDifferentHostsRunInParallel() throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(4);
+    CountDownLatch done = new CountDownLatch(4);
+    for (int i = 0; i < 4; i++) {
+      scheduler
+          .register("repo" + i, "host" + i, newTask(started, done))
+          .schedule(0, TimeUnit.SECONDS);
+    }
+    assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+    release.countDown();
+    assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(maxRunning.get()).isEqualTo(4);
+  }
+
+  @Test
+  public void testUnregisteredUpdateDoesNotRun() throws InterruptedException {
+    CountDownLatch done = new CountDownLatch(1);
+    release.countDown();
+    UpdateScheduler.Registration registration =
+        scheduler.register("repo", null, newTask(new CountDownLatch(1), done));
+    registration.schedule(200, TimeUnit.MILLISECONDS);
+    registration.unregister();
+    assertThat(registration.schedule(0, TimeUnit.SECONDS)).isFalse();
+    assertThat(done.await(500, TimeUnit.MILLISECONDS)).isFalse();
+    assertThat(scheduler.getRegistrationCount()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,115 @@
+package org.cyclopsgroup.gitcon.github;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.cyclopsgroup.gitcon.StaticLocalResourceRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DiskBlobCacheTest {
+  private static final String BLOB_ID_1 = "e69de29bb2d1d6434b8b29ae775ad8c2e48c5391";
+
+  private static final String BLOB_ID_2 = "d00491fd7e5bb6fa28c517a0bb32b8b506539d4d";
+
+  private static Map<String, String> index(String... pathsAndIds) {
+    Map<String, String> index = new HashMap<>();
+    for (int i = 0; i < pathsAndIds.length; i += 2) {
+      index.put(pathsAndIds[i], pathsAndIds[i + 1]);
+    }
+    return index;
+  }
+
+  private File directory;
+
+  private void writeFile(File file, int size, long ageMillis) throws IOException {
+    FileUtils.writeByteArrayToFile(file, new byte[size]);
+    assertThat(file.setLastModified(System.currentTimeMillis() - ageMillis)).isTrue();
+  }
+
+  @Before
+  public void setUpDirectory() throws IOException {
+    directory = StaticLocalResourceRepository.createTempDirectory();
+  }
+
+  @After
+  public void tearDownDirectory() throws IOException {
+    FileUtils.deleteDirectory(directory);
+  }
+
+  @Test
+  public void testIndexIsMergedAndReadBack() throws IOException {
+    DiskBlobCache cache = new DiskBlobCache(directory);
+    assertThat(cache.writeIndex("feature/x", index("a", "1", "b", "2"))).isFalse();
+    assertThat(cache.writeIndex("feature/x", index("a", "1"))).isFalse();
+    assertThat(cache.writeIndex("feature/x", index("a", "3", "c", "4"))).isTrue();
+
+    DiskBlobCache reopened = new DiskBlobCache(directory);
+    assertThat(reopened.readIndex("feature/x", Arrays.asList("a", "b", "c")))
+        .isEqualTo(index("a", "3", "b", "2", "c", "4"));
+    assertThat(reopened.readIndex("master", Collections.singletonList("a"))).isNull();
+  }
+
+  @Test
+  public void testPartialIndexIsNotRead() throws IOException {
+    DiskBlobCache cache = new DiskBlobCache(directory);
+    cache.writeIndex("master", index("a", "1"));
+    assertThat(cache.readIndex("master", Arrays.asList("a", "b"))).isNull();
+    assertThat(new DiskBlobCache(directory).readIndex("master", Arrays.asList("a", "b")))
+        .isNull();
+  }
+
+  @Test
+  public void testBlobsAreWritten() throws IOException {
+    DiskBlobCache cache = new DiskBlobCache(directory);
+    assertThat(cache.getBlobFile(BLOB_ID_1)).isNull();
+    cache.writeBlob(BLOB_ID_1, "a=1".getBytes(StandardCharsets.UTF_8));
+    cache.writeBlob(BLOB_ID_2, new ByteArrayInputStream("b=2".getBytes(StandardCharsets.UTF_8)));
+    assertThat(FileUtils.readFileToString(cache.getBlobFile(BLOB_ID_1), StandardCharsets.UTF_8))
+        .isEqualTo("a=1");
+    assertThat(FileUtils.readFileToString(cache.getBlobFile(BLOB_ID_2), StandardCharsets.UTF_8))
+        .isEqualTo("b=2");
+    // Nothing but the blobs is left in blob directory
+    assertThat(new File(directory, "blobs").list()).hasLength(2);
+  }
+
+  @Test
+  public void testPruneDeletesOnlyUnreferencedBlobsAndStaleTempFiles() throws IOException {
+    DiskBlobCache cache = new DiskBlobCache(directory);
+    cache.writeIndex("master", index("a", "referenced"));
+    File blobs = new File(directory, "blobs");
+    File referenced = new File(blobs, "referenced");
+    File oldBlob = new File(blobs, "old");
+    File newBlob = new File(blobs, "new");
+    File staleTemp = new File(blobs, "stale-1.tmp");
+    File freshTemp = new File(blobs, "fresh-2.tmp");
+    writeFile(referenced, 10, 5 * 3600000L);
+    writeFile(staleTemp, 5, 3 * 3600000L);
+    writeFile(oldBlob, 10, 2 * 3600000L);
+    writeFile(newBlob, 10, 60000L);
+    writeFile(freshTemp, 5, 0L);
+
+    cache.prune(40);
+    assertThat(blobs.list()).hasLength(5);
+
+    // Oldest are deleted first until the total fits
+    cache.prune(25);
+    assertThat(staleTemp.exists()).isFalse();
+    assertThat(oldBlob.exists()).isFalse();
+    assertThat(newBlob.exists()).isTrue();
+
+    cache.prune(0);
+    assertThat(newBlob.exists()).isFalse();
+    assertThat(referenced.exists()).isTrue();
+    assertThat(freshTemp.exists()).isTrue();
+  }
+}
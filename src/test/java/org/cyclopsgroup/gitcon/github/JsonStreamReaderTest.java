@@ -0,0 +1,114 @@
+package org.cyclopsgroup.gitcon.github;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import org.junit.Test;
+
+public class JsonStreamReaderTest {
+  private static JsonStreamReader reader(String json) {
+    return new JsonStreamReader(new StringReader(json));
+  }
+
+  @Test
+  public void testEscapedCharacters() throws IOException {
+    JsonStreamReader reader = reader("[\"a\\\"b\\\\c\\/d\\n\\t\\r\\b\\f\", \"\\u00e9\\u4E2D\"]");
+    reader.beginArray();
+    assertThat(reader.hasNext()).isTrue();
+    assertThat(reader.nextString()).isEqualTo("a\"b\\c/d\n\t\r\b\f");
+    assertThat(reader.hasNext()).isTrue();
+    assertThat(reader.nextString()).isEqualTo("\u00e9\u4e2d");
+    assertThat(reader.hasNext()).isFalse();
+    reader.endArray();
+  }
+
+  @Test
+  public void testPartiallyReadStringIsSkipped() throws IOException {
+    JsonStreamReader reader = reader("{\"text\": \"abc\\\"def\", \"next\": 1}");
+    reader.beginObject();
+    assertThat(reader.nextName()).isEqualTo("text");
+    Reader text = reader.nextStringReader();
+    char[] buffer = new char[2];
+    assertThat(text.read(buffer, 0, 2)).isEqualTo(2);
+    assertThat(new String(buffer)).isEqualTo("ab");
+    assertThat(reader.hasNext()).isTrue();
+    assertThat(reader.nextName()).isEqualTo("next");
+    assertThat(reader.nextLong()).isEqualTo(1L);
+    assertThat(reader.hasNext()).isFalse();
+    reader.endObject();
+  }
+
+  @Test
+  public void testSkipNestedValues() throws IOException {
+    JsonStreamReader reader =
+        reader(
+            "{\"skipped\": {\"a\": [1, {\"b\": \"]}\"}, [], null], \"c\": {}},"
+                + " \"list\": [[true, false], \"x\"], \"kept\": \"value\"}");
+    reader.beginObject();
+    assertThat(reader.nextName()).isEqualTo("skipped");
+    reader.skipValue();
+    assertThat(reader.hasNext()).isTrue();
+    assertThat(reader.nextName()).isEqualTo("list");
+    reader.skipValue();
+    assertThat(reader.hasNext()).isTrue();
+    assertThat(reader.nextName()).isEqualTo("kept");
+    assertThat(reader.nextString()).isEqualTo("value");
+    assertThat(reader.hasNext()).isFalse();
+    reader.endObject();
+  }
+
+  @Test
+  public void testNullAndNumbers() throws IOException {
+    JsonStreamReader reader = reader("[null, 0, -42, 9223372036854775807, 1.5]");
+    reader.beginArray();
+    assertThat(reader.hasNext()).isTrue();
+    assertThat(reader.isNextNull()).isTrue();
+    reader.nextNull();
+    assertThat(reader.hasNext()).isTrue();
+    assertThat(reader.isNextNull()).isFalse();
+    assertThat(reader.nextLong()).isEqualTo(0L);
+    assertThat(reader.hasNext()).isTrue();
+    assertThat(reader.nextLong()).isEqualTo(-42L);
+    assertThat(reader.hasNext()).isTrue();
+    assertThat(reader.nextLong()).isEqualTo(Long.MAX_VALUE);
+    assertThat(reader.hasNext()).isTrue();
+    reader.skipValue();
+    assertThat(reader.hasNext()).isFalse();
+    reader.endArray();
+  }
+
+  @Test(expected = IOException.class)
+  public void testDecimalIsNotLong() throws IOException {
+    reader("1.5").nextLong();
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncatedString() throws IOException {
+    reader("{\"text\": \"abc").skipValue();
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncatedObject() throws IOException {
+    JsonStreamReader reader = reader("{\"a\": 1");
+    reader.beginObject();
+    reader.nextName();
+    reader.nextLong();
+    reader.hasNext();
+    reader.endObject();
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncatedEscape() throws IOException {
+    reader("\"\\u00").nextString();
+  }
+
+  @Test(expected = IOException.class)
+  public void testMissingValue() throws IOException {
+    JsonStreamReader reader = reader("{\"a\":");
+    reader.beginObject();
+    reader.nextName();
+    reader.skipValue();
+  }
+}
@@ -0,0 +1,115 @@
+package org.cyclopsgroup.gitcon.jgit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.cyclopsgroup.gitcon.ChangeEvent;
+import org.cyclopsgroup.gitcon.Resource;
+import org.cyclopsgroup.gitcon.StaticLocalResourceRepository;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JGitResourceRepositoryTest {
+  private Git origin;
+
+  private File originDirectory;
+
+  private JGitResourceRepository repo;
+
+  private RevCommit commit(String message) throws GitAPIException {
+    origin.add().addFilepattern(".").call();
+    return origin.commit().setAll(true).setMessage(message).call();
+  }
+
+  @Before
+  public void setUpRepository() throws GitAPIException, IOException {
+    originDirectory = StaticLocalResourceRepository.createTempDirectory();
+    origin = Git.init().setDirectory(originDirectory).call();
+    write("app.properties", "include=conf/base.properties\na=1");
+    write("conf/base.properties", "b=2");
+    commit("Initial commit");
+
+    repo =
+        new JGitResourceRepository(
+            "file://" + originDirectory.getAbsolutePath(),
+            StaticLocalResourceRepository.createTempDirectory());
+    repo.init();
+  }
+
+  @After
+  public void tearDownRepository() throws IOException {
+    repo.close();
+    origin.close();
+    FileUtils.deleteDirectory(originDirectory);
+  }
+
+  @Test(expected = FileNotFoundException.class)
+  public void testDirectoryIsNotFile() throws IOException {
+    repo.getResource("conf").size();
+  }
+
+  @Test(expected = FileNotFoundException.class)
+  public void testMissingPath() throws IOException {
+    Resource missing = repo.getResource("missing.properties");
+    assertThat(missing.getVersion()).isNull();
+    missing.read(in -> {});
+  }
+
+  @Test
+  public void testRead() throws IOException {
+    Resource resource = repo.getResource("/app.properties");
+    assertThat(resource.readAsProperties()).containsExactly("a", "1", "b", "2");
+    Resource base = resource.reference("conf/base.properties");
+    assertThat(base.size()).isEqualTo(3L);
+    ByteBuffer buffer = base.readAsByteBuffer();
+    byte[] content = new byte[buffer.remaining()];
+    buffer.get(content);
+    assertThat(new String(content, StandardCharsets.UTF_8)).isEqualTo("b=2");
+    assertThat(base.getVersion()).isEqualTo(base.getMetadata().getVersion());
+    assertThat(base).isEqualTo(repo.getResource("conf/base.properties"));
+  }
+
+  @Test
+  public void testUpdatePublishesChanges() throws GitAPIException, IOException {
+    List<ChangeEvent> events = new ArrayList<>();
+    repo.addChangeListener(events::add);
+    String oldCommitId = repo.getCurrentCommitId();
+    String oldVersion = repo.getResource("app.properties").getVersion();
+    assertThat(repo.update()).isNull();
+
+    write("app.properties", "include=conf/base.properties\na=11");
+    write("new.properties", "c=3");
+    origin.rm().addFilepattern("conf/base.properties").call();
+    RevCommit commit = commit("Change files");
+    ChangeEvent event = repo.update();
+
+    assertThat(event.getOldRevision()).isEqualTo(oldCommitId);
+    assertThat(event.getNewRevision()).isEqualTo(commit.name());
+    assertThat(event.getModifiedPaths()).containsExactly("app.properties");
+    assertThat(event.getAddedPaths()).containsExactly("new.properties");
+    assertThat(event.getDeletedPaths()).containsExactly("conf/base.properties");
+    assertThat(events).containsExactly(event);
+    assertThat(repo.getCurrentCommitId()).isEqualTo(commit.name());
+    assertThat(repo.getResource("app.properties").getVersion()).isNotEqualTo(oldVersion);
+    assertThat(repo.getResource("conf/base.properties").getVersion()).isNull();
+
+    // Nothing is fetched or published when remote branch didn't move
+    assertThat(repo.update()).isNull();
+    assertThat(events).hasSize(1);
+  }
+
+  private void write(String path, String content) throws IOException {
+    FileUtils.write(new File(originDirectory, path), content, StandardCharsets.UTF_8);
+  }
+}
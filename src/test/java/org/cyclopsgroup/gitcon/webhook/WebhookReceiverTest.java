@@ -0,0 +1,91 @@
+package org.cyclopsgroup.gitcon.webhook;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WebhookReceiverTest {
+  private static final String PAYLOAD =
+      "{\"ref\": \"refs/heads/master\", \"repository\": {\"full_name\": \"jiaqi/gitcon\"}}";
+
+  private WebhookReceiver receiver;
+
+  private final CountDownLatch triggered = new CountDownLatch(1);
+
+  private final AtomicInteger triggers = new AtomicInteger();
+
+  private static String sign(String payload, String secret) throws Exception {
+    Mac mac = Mac.getInstance("HmacSHA256");
+    mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+    StringBuilder signature = new StringBuilder("sha256=");
+    for (byte b : mac.doFinal(payload.getBytes(StandardCharsets.UTF_8))) {
+      signature.append(String.format("%02x", b));
+    }
+    return signature.toString();
+  }
+
+  private int post(String header, String value) throws IOException {
+    HttpURLConnection connection =
+        (HttpURLConnection) new URL("http://localhost:" + receiver.getPort()).openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    if (header != null) {
+      connection.setRequestProperty(header, value);
+    }
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(PAYLOAD.getBytes(StandardCharsets.UTF_8));
+    }
+    return connection.getResponseCode();
+  }
+
+  @Before
+  public void setUpReceiver() throws IOException {
+    receiver = new WebhookReceiver(0);
+    // Long enough for all pushes of a test to arrive within one period
+    receiver.setDebounceMillis(2000);
+    receiver.setSecret("secret");
+    Runnable trigger =
+        () -> {
+          triggers.incrementAndGet();
+          triggered.countDown();
+        };
+    receiver.register("jiaqi/gitcon", "master", trigger);
+    receiver.register("jiaqi/gitcon", "other", trigger);
+    receiver.start();
+  }
+
+  @After
+  public void tearDownReceiver() {
+    receiver.close();
+  }
+
+  @Test
+  public void testBurstOfPushesIsDebounced() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      assertThat(post("X-Hub-Signature-256", sign(PAYLOAD, "secret"))).isEqualTo(200);
+    }
+    assertThat(post("X-Gitlab-Token", "secret")).isEqualTo(200);
+    assertThat(triggered.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(triggers.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testWrongSecretIsRejected() throws Exception {
+    assertThat(post("X-Hub-Signature-256", sign(PAYLOAD, "wrong"))).isEqualTo(401);
+    assertThat(post("X-Gitlab-Token", "wrong")).isEqualTo(401);
+    assertThat(post(null, null)).isEqualTo(401);
+    assertThat(triggers.get()).isEqualTo(0);
+  }
+}